@@ -12,4 +12,12 @@ public interface CyclicGroup<G> extends Group<G> {
 	 * Return a generator for the group.
 	 */
 	public G getGenerator();
+
+	/**
+	 * Return a multiplier for a fixed base (which may precompute tables to speed up multiplications).
+	 * The multiplier for the generator is created once and cached by the group;
+	 * multipliers for other frequently-used bases (e.g., a public key) should be kept by the caller.
+	 * @param base the base (a group element).
+	 */
+	public FixedBaseMultiplier<G> getFixedBaseMultiplier(G base);
 }
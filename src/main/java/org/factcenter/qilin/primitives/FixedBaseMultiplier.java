@@ -0,0 +1,27 @@
+package org.factcenter.qilin.primitives;
+
+import java.math.BigInteger;
+
+/**
+ * Multiplies a fixed group element (the base) by arbitrary integers.
+ * Implementations may precompute tables for the base, making each multiplication
+ * much faster than {@link Group#multiply(Object, BigInteger)}, so an instance
+ * should be obtained once (see {@link CyclicGroup#getFixedBaseMultiplier(Object)}) and reused
+ * for all multiplications of the same base.
+ * Implementations must be thread-safe.
+ *
+ * @param <G> the group element type
+ */
+public interface FixedBaseMultiplier<G> {
+	/**
+	 * Return the base.
+	 */
+	public G getBase();
+
+	/**
+	 * Multiply the base by an integer.
+	 * @param scalar the integer to multiply by
+	 * @return base * scalar (the same value returned by {@link Group#multiply(Object, BigInteger)}).
+	 */
+	public G multiply(BigInteger scalar);
+}
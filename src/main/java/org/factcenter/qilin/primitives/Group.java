@@ -1,6 +1,8 @@
 package org.factcenter.qilin.primitives;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -30,12 +32,41 @@ public interface Group<G> extends Sampler<G> {
 	 */
 	public G add(G el, G el2);
 
+	/**
+	 * Add all the elements of a collection.
+	 * This is equivalent to folding the elements with {@link #add(Object, Object)}, but groups may implement it
+	 * more efficiently (e.g., by deferring modular reductions or normalization to the end).
+	 * @param elements the summands
+	 * @return the sum of the elements (the {@link #zero()} element if there are none)
+	 */
+	public G sum(Iterable<G> elements);
+
+	/**
+	 * Compute a linear combination of group elements: bases[0] * scalars[0] + ... + bases[n-1] * scalars[n-1].
+	 * This is equivalent to (but usually much faster than) calling {@link #multiply(Object, BigInteger)} for every
+	 * base and adding the results, since the doublings can be shared between the bases.
+	 * (see {@link org.factcenter.qilin.primitives.generic.MultiExp} for a generic implementation).
+	 * @param bases the group elements
+	 * @param scalars the integers to multiply by (must have the same size as bases)
+	 * @return the sum of bases[i] * scalars[i] (the {@link #zero()} element if the lists are empty)
+	 */
+	public G multiExp(List<G> bases, List<BigInteger> scalars);
+
 	/**
 	 * Return the negation of a group element
 	 * @param g
 	 * @return -g
 	 */
 	public G negate(G g); 
+
+	/**
+	 * Return the negations of a list of group elements.
+	 * This is equivalent to calling {@link #negate(Object)} on every element, but groups may implement it
+	 * more efficiently (e.g., with a single modular inversion for the whole list).
+	 * @param elements
+	 * @return a list whose i'th element is -elements[i]
+	 */
+	public List<G> negateAll(List<G> elements);
 	
 	/**
 	 * Return the neutral element in the group with respect to addition.
@@ -55,6 +86,17 @@ public interface Group<G> extends Sampler<G> {
 	 * @return true iff the element g is in the group
 	 */
 	public boolean contains(G g);
+
+	/**
+	 * Check that all the elements of a collection are in the group.
+	 * This is equivalent to calling {@link #contains(Object)} on every element, but groups may implement it
+	 * more efficiently (e.g., by batching). Batch checks may be probabilistic; implementations must
+	 * document their error probability.
+	 *
+	 * @param elements
+	 * @return true iff all the elements are in the group
+	 */
+	public boolean containsAll(Collection<G> elements);
 	
 	/**
 	 * Get a bound on the order of the group. The actual order of the group MUST divide this bound
@@ -1,6 +1,8 @@
 package org.factcenter.qilin.primitives;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Represents a Homomorphic cryptosystem or commitment scheme. 
@@ -22,6 +24,25 @@ public interface Homomorphic<C,P,R> {
 	 * @return a ciphertext that encodes the sum of the two
 	 */
 	public C add(C cipher1, C cipher2);
+
+	/**
+	 * Add many ciphertexts together.
+	 * This is equivalent to folding the ciphertexts with {@link #add(Object, Object)}, but implementations
+	 * may defer reductions and normalization to the end (see {@link Group#sum(Iterable)}).
+	 * @param ciphers the ciphertexts
+	 * @return a ciphertext that encodes the sum of the plaintexts
+	 */
+	public C sum(Iterable<C> ciphers);
+
+	/**
+	 * Add many ciphertexts together in parallel: the list is split into chunks that are summed
+	 * (with {@link #sum(Iterable)}) by separate tasks, and the partial sums are then added.
+	 * @param ciphers the ciphertexts
+	 * @param pool the pool on which to run the tasks (if null, the implementation's default is used;
+	 *             implementations without one compute the sum in the calling thread)
+	 * @return the same ciphertext as {@link #sum(Iterable)}
+	 */
+	public C sumParallel(List<C> ciphers, ForkJoinPool pool);
 	
 	/**
 	 * Return a ciphertext that encodes the negation of plaintext
@@ -51,6 +72,18 @@ public interface Homomorphic<C,P,R> {
 	 * @return r such that add(cipher(msg1,rnd1),cipher(msg2,rnd2))=cipher(msg1.add(msg2),rnd2)
 	 */
 	public R rndadd(P msg1, R rnd1, P msg2, R rnd2);
+
+	/**
+	 * Compute the corresponding randomness for the ciphertext created by adding
+	 * many ciphertexts (see {@link #sum(Iterable)} and {@link #sumParallel(List, ForkJoinPool)}).
+	 * The result may be reduced (e.g., randomness that is an exponent is reduced modulo the group order), so it
+	 * need not equal the result of folding the randomness with {@link #rndadd(Object, Object, Object, Object)};
+	 * both give the same ciphertext.
+	 * @param msgs the messages (in the same order as rnds)
+	 * @param rnds the randomness of each ciphertext
+	 * @return r such that sum(cipher(msgs[i],rnds[i])) = cipher(sum of msgs, r)
+	 */
+	public R rndsum(List<P> msgs, List<R> rnds);
 	
 	/**
 	 * Multiply a ciphertext by a scalar
@@ -0,0 +1,38 @@
+package org.factcenter.qilin.primitives;
+
+import org.factcenter.qilin.util.PrecomputedTables;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FixedBaseMultiplier} whose precomputed table can be exported and later imported
+ * (e.g., by a restarted process), so that multiplications run at full speed immediately.
+ * The table format is fixed-width and can be read directly from a memory-mapped file;
+ * see {@link PrecomputedTables} for saving and loading tables with a versioned header and a checksum.
+ *
+ * @param <G> the group element type
+ */
+public interface PrecomputedMultiplier<G> extends FixedBaseMultiplier<G> {
+	/**
+	 * Build the table now (if it hasn't been built or imported yet).
+	 */
+	public void precompute();
+
+	/**
+	 * Return the number of bytes written by {@link #exportTable(ByteBuffer)} (building the table if necessary).
+	 */
+	public int getExportedTableSize();
+
+	/**
+	 * Write the table (building it if necessary) at the buffer's position.
+	 * The table identifies the group and the base, so it can't be imported into a different multiplier.
+	 */
+	public void exportTable(ByteBuffer out);
+
+	/**
+	 * Read a table written by {@link #exportTable(ByteBuffer)} from the buffer's position.
+	 * @throws IOException if the table is malformed, or was exported by a multiplier for a different base or group.
+	 */
+	public void importTable(ByteBuffer in) throws IOException;
+}
@@ -1,5 +1,7 @@
 package org.factcenter.qilin.primitives;
 
+import org.factcenter.qilin.util.BitMatrix;
+
 import javax.crypto.SecretKey;
 import java.security.InvalidKeyException;
 
@@ -42,6 +44,22 @@ public interface PseudorandomGenerator {
      */
     public void getPRGBytes(byte[] outBytes, int outOffset, int outlen);
 
+    /**
+     * Expand many seeds at once.
+     * For each 0 &le; i &lt; numRows, row seedRow+i of seeds is used as a key (exactly as in {@link #setKey(byte[])})
+     * and the first bytes of the resulting stream are written to row outRow+i of out (filling the entire row;
+     * the padding bits at the end of the row are zeroed).
+     * <p>
+     * This generator's own key and stream position are not changed, and implementations may process
+     * rows in parallel.
+     * @param seeds matrix whose rows are the seeds.
+     * @param seedRow first seed row.
+     * @param out matrix to which the output is written.
+     * @param outRow first output row.
+     * @param numRows number of rows to expand.
+     */
+    public void expandRows(BitMatrix seeds, int seedRow, BitMatrix out, int outRow, int numRows);
+
     /**
      * Reset the PRG (without changing the key).
      * This will bring the internal state to the same
@@ -24,6 +24,19 @@ public interface RandomOracle {
 	 *   length will be a prefix of the output on the longer. 
 	 */
 	public byte[] hash(byte[] input, int outlen);
+
+	/**
+	 * Hash a slice of an array into a slice of another array.
+	 * The output is the same as that of {@link #hash(byte[], int)} on the input slice,
+	 * but no arrays are allocated.
+	 * @param input array containing the input to be hashed
+	 * @param inOffs offset of the input in the array
+	 * @param inLen length of the input
+	 * @param out array to which the output is written
+	 * @param outOffs offset at which to write the output
+	 * @param outlen the number of bytes to write.
+	 */
+	public void hash(byte[] input, int inOffs, int inLen, byte[] out, int outOffs, int outlen);
 	
 	/**
 	 * Get the "native" length returned by a call to
@@ -37,6 +37,16 @@ public interface StreamingRandomOracle {
 	 */
 	public byte[] digest(int index, int outlen);
 
+	/**
+	 * Same as {@link #digest(int, int)}, but writes the output to a caller-supplied array.
+	 *
+	 * @param index The index of the random "stream" to return.
+	 * @param out the array to which the output is written.
+	 * @param offs the offset in out at which to start writing.
+	 * @param outlen the length of the output (in bytes).
+	 */
+	public void digest(int index, byte[] out, int offs, int outlen);
+
 	/**
 	 * Return a {@link Random} object that can be used to generate a
 	 * stream of pseudorandom bytes from a given input.
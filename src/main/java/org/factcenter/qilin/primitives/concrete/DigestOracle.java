@@ -1,5 +1,13 @@
 package org.factcenter.qilin.primitives.concrete;
 
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.MD5Digest;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.crypto.digests.SHA224Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.digests.SHA384Digest;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.util.Memoable;
 import org.factcenter.qilin.primitives.RandomOracle;
 import org.factcenter.qilin.primitives.StreamingRandomOracle;
 
@@ -11,41 +19,134 @@ import java.util.Random;
 /**
  * "random oracle" implementation using plain digest
  * (Note: this may not be very secure).
+ *
+ * For common algorithms (SHA-1, SHA-2 and MD5), the oracle uses BouncyCastle digests whose
+ * intermediate state can be copied without allocation: the state after the streamed input
+ * (and after the input passed to {@link #hash(byte[], int, int, byte[], int, int)}) is computed once
+ * and reused for every output block, so {@link #digest(int, byte[], int, int)} can be called repeatedly with
+ * different indices on the same input at the cost of a single block each.
+ * Other algorithms fall back to cloning a {@link MessageDigest}. In both cases the outputs are identical.
  * @author talm
  *
  */
 public class DigestOracle implements RandomOracle, StreamingRandomOracle {
 	final static String DEFAULT_ALGORITHM = "SHA-256";
-	
+
 	MessageDigest md;
-	
+
+	/**
+	 * The streamed input (if a BouncyCastle digest is available for the algorithm; otherwise null
+	 * and md is used instead).
+	 */
+	Digest stream;
+
+	/**
+	 * Scratch digests: the state after a prefix of the input, and the state used to compute a single block.
+	 */
+	Digest prefix;
+	Digest work;
+
+	/**
+	 * Output buffer for a single block.
+	 */
+	byte[] block;
 
 	public DigestOracle(String algorithm) throws NoSuchAlgorithmException {
 		md = MessageDigest.getInstance(algorithm);
+		initBCDigests(algorithm);
 	}
-	
+
 	public DigestOracle() {
 		try {
 			md = MessageDigest.getInstance(DEFAULT_ALGORITHM);
 		} catch (NoSuchAlgorithmException nsa) {
-			// We don't want to require try-catch blocks to 
+			// We don't want to require try-catch blocks to
 			// check whether the default algorithm is supported.
 			throw new RuntimeException(nsa.getMessage());
 		}
+		initBCDigests(DEFAULT_ALGORITHM);
+	}
+
+	/**
+	 * Return a BouncyCastle digest (which implements {@link Memoable}) for the algorithm,
+	 * or null if we don't have one.
+	 */
+	static Digest createBCDigest(String algorithm) {
+		switch (algorithm.toUpperCase().replace("-", "")) {
+			case "SHA1":
+				return new SHA1Digest();
+			case "SHA224":
+				return new SHA224Digest();
+			case "SHA256":
+				return new SHA256Digest();
+			case "SHA384":
+				return new SHA384Digest();
+			case "SHA512":
+				return new SHA512Digest();
+			case "MD5":
+				return new MD5Digest();
+			default:
+				return null;
+		}
+	}
+
+	private void initBCDigests(String algorithm) {
+		stream = createBCDigest(algorithm);
+		if (stream != null) {
+			prefix = createBCDigest(algorithm);
+			work = createBCDigest(algorithm);
+			block = new byte[stream.getDigestSize()];
+		}
+	}
+
+	/**
+	 * Copy the state of src to dst.
+	 */
+	static void copyState(Digest dst, Digest src) {
+		((Memoable) dst).reset((Memoable) src);
+	}
+
+	/**
+	 * Update a digest with an integer, in LSB-first order.
+	 */
+	static void updateInt(Digest d, int n) {
+		d.update((byte) (n & 0xff));
+		d.update((byte) ((n >>> 8) & 0xff));
+		d.update((byte) ((n >>> 16) & 0xff));
+		d.update((byte) ((n >>> 24) & 0xff));
 	}
-	
+
 	public byte[] hash(byte[] input, int outlen) {
-		//int blocklen = md.getDigestLength();
-		
 		byte[] out = new byte[outlen];
-		
+		hash(input, 0, input.length, out, 0, outlen);
+		return out;
+	}
+
+	@Override
+	public void hash(byte[] input, int inOffs, int inLen, byte[] out, int outOffs, int outlen) {
+		// Hash blocks with block number appended as an integer in LSB-first order
+		if (stream != null) {
+			prefix.reset();
+			prefix.update(input, inOffs, inLen);
+			int done = 0;
+			int i = 0;
+			do {
+				copyState(work, prefix);
+				updateInt(work, i);
+				++i;
+				work.doFinal(block, 0);
+				int copylen = Math.min(outlen - done, block.length);
+				System.arraycopy(block, 0, out, outOffs + done, copylen);
+				done += copylen;
+			} while (done < outlen);
+			return;
+		}
+
 		int done = 0;
 		int i = 0;
-		
-		// Hash blocks with block number appended as an integer in LSB-first order
 		do {
 			md.reset();
-			md.update(input);
+			md.update(input, inOffs, inLen);
 			md.update((byte) (i & 0xff));
 			md.update((byte) ((i >>> 8) & 0xff));
 			md.update((byte) ((i >>> 16) & 0xff));
@@ -53,21 +154,21 @@ public class DigestOracle implements RandomOracle, StreamingRandomOracle {
 			++i;
 			byte[] digest = md.digest();
 			int copylen = Math.min(outlen - done, digest.length);
-			System.arraycopy(digest, 0, out, done, copylen);
+			System.arraycopy(digest, 0, out, outOffs + done, copylen);
 			done += copylen;
 		} while (done < outlen);
-
-		return out;
-	
 	}
 
 	public Random getRandomStream(byte[] input) {
+		Digest d = createBCDigest(md.getAlgorithm());
+		if (d != null)
+			return new DigestRandom(d, input);
         return new DigestRandom(md, input);
     }
 
 	/**
 	 * Get the "native" length returned by a call to
-	 * the digest function. Running {@link #hash(byte[], int)} 
+	 * the digest function. Running {@link #hash(byte[], int)}
 	 * with this as the length value will be most efficient.
 	 * @return the length in bytes
 	 */
@@ -78,22 +179,45 @@ public class DigestOracle implements RandomOracle, StreamingRandomOracle {
 	@Override
 	public byte[] digest(int index, int outlen) {
 		byte[] retval = new byte[outlen];
-		
+		digest(index, retval, 0, outlen);
+		return retval;
+	}
+
+	/**
+	 * Write the output for the streamed input and the given index to out.
+	 * The streamed input is not changed, so this method can be called again
+	 * (e.g., with a different index) without calling {@link #reset()} and {@link #update(byte[], int, int)}.
+	 */
+	@Override
+	public void digest(int index, byte[] out, int offs, int outlen) {
+		if (stream != null) {
+			copyState(prefix, stream);
+			updateInt(prefix, index);
+			for (int i = 0; i < outlen;) {
+				copyState(work, prefix);
+				work.update((byte) i);
+				work.doFinal(block, 0);
+				int copylen = Math.min(outlen - i, block.length);
+				System.arraycopy(block, 0, out, offs + i, copylen);
+				i += copylen;
+			}
+			return;
+		}
+
 		try {
 			MessageDigest md2 = (MessageDigest) md.clone();
-			md.update((byte) (index & 0xff));
-			md.update((byte) ((index >>> 8) & 0xff));
-			md.update((byte) ((index >>> 16) & 0xff));
-			md.update((byte) ((index >>> 24) & 0xff));
+			md2.update((byte) (index & 0xff));
+			md2.update((byte) ((index >>> 8) & 0xff));
+			md2.update((byte) ((index >>> 16) & 0xff));
+			md2.update((byte) ((index >>> 24) & 0xff));
 			for (int i = 0; i < outlen;) {
 				MessageDigest md3 = (MessageDigest) md2.clone();
 				md3.update((byte) i);
 				byte[] output = md3.digest();
 				int copylen = Math.min(outlen - i, output.length);
-				System.arraycopy(output, 0, retval, i, copylen);
+				System.arraycopy(output, 0, out, offs + i, copylen);
 				i += copylen;
 			}
-			return retval;
 		} catch (CloneNotSupportedException e) {
 			throw new RuntimeException("Can't run oracle when clone is not supported!");
 		}
@@ -101,11 +225,17 @@ public class DigestOracle implements RandomOracle, StreamingRandomOracle {
 
 	@Override
 	public void reset() {
-		md.reset();
+		if (stream != null)
+			stream.reset();
+		else
+			md.reset();
 	}
 
 	@Override
 	public void update(byte[] input, int offs, int len) {
-		md.update(input, offs, len);
+		if (stream != null)
+			stream.update(input, offs, len);
+		else
+			md.update(input, offs, len);
 	}
 }
@@ -1,5 +1,6 @@
 package org.factcenter.qilin.primitives.concrete;
 
+import org.bouncycastle.crypto.Digest;
 import org.factcenter.qilin.util.BitMatrix;
 
 import java.security.MessageDigest;
@@ -19,6 +20,14 @@ public class DigestRandom extends Random {
     int bitsLeft = 0;
     long counter = 0;
 
+    /**
+     * If not null, the digest state after the input (used instead of md);
+     * each hash copies it into work and writes the output to hashBytes (wrapped by currentHash).
+     */
+    Digest prefix;
+    Digest work;
+    byte[] hashBytes;
+
     public DigestRandom(MessageDigest md, byte[] input) {
         this.md = md;
 
@@ -26,6 +35,19 @@ public class DigestRandom extends Random {
         md.update(input);
     }
 
+    /**
+     * Create a stream using a BouncyCastle digest (which must implement {@link org.bouncycastle.util.Memoable}).
+     * The input is hashed once, and the state is reused for every index.
+     */
+    public DigestRandom(Digest digest, byte[] input) {
+        prefix = digest;
+        prefix.reset();
+        prefix.update(input, 0, input.length);
+        work = DigestOracle.createBCDigest(digest.getAlgorithmName());
+        hashBytes = new byte[digest.getDigestSize()];
+        currentHash = new BitMatrix(hashBytes, 0, hashBytes.length * 8, 1, hashBytes.length, false, false);
+    }
+
 
     @Override
     protected int next(int bits) {
@@ -36,23 +58,32 @@ public class DigestRandom extends Random {
 
         while (bits > 0) {
             if (bitsLeft == 0) {
-                try {
-                    MessageDigest md1 = (MessageDigest) md.clone();
-
+                if (prefix != null) {
+                    DigestOracle.copyState(work, prefix);
                     for (int i = 0; i < 8; ++i)
-                        md1.update((byte)((counter >>> i*8) & 0xff));
-                    currentHash = new BitMatrix(md1.digest(), 0);
-                    ++counter;
-                    bitsLeft = currentHash.getNumCols();
-                    curBit = 0;
-                } catch (CloneNotSupportedException e) {
-                    throw new RuntimeException("Can't run oracle when clone is not supported!");
+                        work.update((byte)((counter >>> i*8) & 0xff));
+                    work.doFinal(hashBytes, 0);
+                } else {
+                    try {
+                        MessageDigest md1 = (MessageDigest) md.clone();
+
+                        for (int i = 0; i < 8; ++i)
+                            md1.update((byte)((counter >>> i*8) & 0xff));
+                        currentHash = new BitMatrix(md1.digest(), 0);
+                    } catch (CloneNotSupportedException e) {
+                        throw new RuntimeException("Can't run oracle when clone is not supported!");
+                    }
                 }
+                ++counter;
+                bitsLeft = currentHash.getNumCols();
+                curBit = 0;
             }
             int read = Math.min(bits, bitsLeft);
             retVal <<= read;
-            retVal |= ((int) currentHash.getBits(curBit, read)) & ((1 << read) - 1);
+            // (the mask must be computed as a long: in int arithmetic 1 << 32 == 1)
+            retVal |= (int) (currentHash.getBits(curBit, read) & ((1L << read) - 1));
             curBit += read;
+            bitsLeft -= read;
             bits -= read;
         }
 
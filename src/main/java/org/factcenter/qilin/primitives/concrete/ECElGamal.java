@@ -3,6 +3,7 @@ package org.factcenter.qilin.primitives.concrete;
 import org.bouncycastle.math.ec.ECPoint;
 import org.factcenter.qilin.primitives.generic.ElGamal;
 import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.Pair;
 
 import java.math.BigInteger;
 import java.util.Random;
@@ -14,15 +15,46 @@ import java.util.Random;
  */
 public class ECElGamal {
 	static public class PK extends ElGamal.PK<ECPoint> {
+		final ECGroup ecGroup;
+
 		public PK(ECGroup grp, ECPoint pk) {
 			super(grp, pk);
+			this.ecGroup = grp;
+		}
+
+		@Override
+		protected void normalizeAll(Pair<ECPoint, ECPoint>[] ciphers, int from, int to) {
+			ECElGamal.normalizeAll(ecGroup, ciphers, from, to);
 		}
 	}
 	
 	static public class SK extends ElGamal.SK<ECPoint> {
+		final ECGroup ecGroup;
+
 		public SK(ECGroup grp, BigInteger sk) {
 			super(grp, sk);
+			this.ecGroup = grp;
+		}
+
+		@Override
+		protected void normalizeAll(Pair<ECPoint, ECPoint>[] ciphers, int from, int to) {
+			ECElGamal.normalizeAll(ecGroup, ciphers, from, to);
+		}
+	}
+
+	/**
+	 * Normalize the points of the ciphertexts in [from, to) (to affine coordinates) with a single field inversion,
+	 * so encoding or comparing them later doesn't cost an inversion per point.
+	 */
+	static void normalizeAll(ECGroup grp, Pair<ECPoint, ECPoint>[] ciphers, int from, int to) {
+		ECPoint[] points = new ECPoint[2 * (to - from)];
+		for (int i = from; i < to; ++i) {
+			points[2 * (i - from)] = ciphers[i].a;
+			points[2 * (i - from) + 1] = ciphers[i].b;
 		}
+		grp.normalizeAll(points);
+		for (int i = from; i < to; ++i)
+			ciphers[i] = new Pair<ECPoint, ECPoint>(points[2 * (i - from)], points[2 * (i - from) + 1]);
 	}
 
 	/**
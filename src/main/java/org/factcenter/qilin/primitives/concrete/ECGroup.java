@@ -1,22 +1,44 @@
 package org.factcenter.qilin.primitives.concrete;
 
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
 import org.bouncycastle.jce.ECNamedCurveTable;
 import org.bouncycastle.jce.spec.ECParameterSpec;
+import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECCurve;
 import org.bouncycastle.math.ec.ECFieldElement;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointPreCompInfo;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.bouncycastle.math.ec.PreCompInfo;
 import org.bouncycastle.util.BigIntegers;
 import org.factcenter.qilin.comm.SendableInput;
 import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
+import org.factcenter.qilin.primitives.PrecomputedMultiplier;
+import org.factcenter.qilin.primitives.generic.MultiExp;
 import org.factcenter.qilin.util.ByteEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.factcenter.qilin.comm.SendableOutput;
 import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.PrecomputedTables;
 import org.factcenter.qilin.util.StreamEncoder;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -29,6 +51,22 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
 	final Logger logger = LoggerFactory.getLogger(getClass());
 
 	ECParameterSpec curveParams;
+
+	/**
+	 * Multiplier for the generator (created on first use).
+	 */
+	transient FixedBaseMultiplier<ECPoint> generatorMultiplier;
+
+	/**
+	 * Cache of decoded points (null if disabled); see {@link #setDecodeCacheSize(int)}.
+	 */
+	transient DecodeCache decodeCache;
+
+	/**
+	 * Map used for dense decoding (see {@link #getHashMap()}).
+	 */
+	transient SimplifiedSWUMap hashMap;
+	transient boolean hashMapChecked;
 	
 	public ECGroup(ECParameterSpec curveParams) {
 		this.curveParams = curveParams;
@@ -38,15 +76,44 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
 	 * Construct an EC curve group using a named curve. 
 	 * For reasonable (NIST-approved) security parameters,
 	 * use "P-256".
+	 * <p>
+	 * If BouncyCastle has an optimized implementation of the curve (e.g., for P-256, secp256k1 (which uses the
+	 * GLV endomorphism) or curve25519), it is used instead of generic arithmetic; encodings and results are the same.
+	 * See {@link #getCurveImplementation()}.
 	 * @param namedParams
 	 * @throws IllegalArgumentException
 	 */
 	public ECGroup(String namedParams) throws IllegalArgumentException {
-		this.curveParams = ECNamedCurveTable.getParameterSpec(namedParams);
+		this.curveParams = getParameterSpec(namedParams);
 		if (curveParams == null)
 			throw new IllegalArgumentException("No such curve: " + namedParams);
 	}
 
+	/**
+	 * Return the parameters of a named curve, using BouncyCastle's optimized implementation of the curve
+	 * if there is one (null if there is no such curve).
+	 * Curves can be named by any name BouncyCastle knows (e.g., "P-256", "secp256r1" or "prime256v1").
+	 */
+	public static ECParameterSpec getParameterSpec(String name) {
+		X9ECParameters custom = CustomNamedCurves.getByName(name);
+		if (custom == null) {
+			ASN1ObjectIdentifier oid = org.bouncycastle.asn1.x9.ECNamedCurveTable.getOID(name);
+			if (oid != null)
+				custom = CustomNamedCurves.getByOID(oid);
+		}
+		if (custom != null)
+			return new ECParameterSpec(custom.getCurve(), custom.getG(), custom.getN(), custom.getH(), custom.getSeed());
+		return ECNamedCurveTable.getParameterSpec(name);
+	}
+
+	/**
+	 * Return the name of the BouncyCastle class implementing the curve arithmetic: e.g., "SecP256R1Curve"
+	 * for the optimized implementation of P-256, or "Fp" for generic arithmetic over a prime field.
+	 */
+	public String getCurveImplementation() {
+		return curveParams.getCurve().getClass().getSimpleName();
+	}
+
 	public ECParameterSpec getCurveParams() {
 		return curveParams;
 	}
@@ -55,16 +122,209 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
 		return curveParams.getG();
 	}
 	
+	/**
+	 * Multiplies a fixed point using BouncyCastle's fixed-point comb method.
+	 * The comb table is computed on first use and is stored by BouncyCastle with the base point itself.
+	 * <p>
+	 * The exported table (see {@link PrecomputedMultiplier}) consists of the comb width, the number of points,
+	 * the length of a point's encoding and the (compressed) base, followed by the table's points in uncompressed
+	 * encoding (the point at infinity is a block of zeros). Imported points are validated to be on the curve,
+	 * and the imported table is checked against the base (see {@link #checkTable(ECPoint[], int)}) before it is used.
+	 */
+	static class CombMultiplier implements PrecomputedMultiplier<ECPoint> {
+		final ECPoint base;
+		final BigInteger order;
+		final FixedPointCombMultiplier comb = new FixedPointCombMultiplier();
+
+		CombMultiplier(ECPoint base, BigInteger order) {
+			this.base = base;
+			this.order = order;
+		}
+
+		@Override
+		public ECPoint getBase() {
+			return base;
+		}
+
+		@Override
+		public ECPoint multiply(BigInteger scalar) {
+			// The comb only supports scalars smaller than the group order.
+			return comb.multiply(base, scalar.mod(order));
+		}
+
+		/**
+		 * Return BouncyCastle's table for the base (null if it wasn't computed).
+		 */
+		FixedPointPreCompInfo getPreCompInfo() {
+			PreCompInfo info = base.getCurve().getPreCompInfo(base, FixedPointUtil.PRECOMP_NAME);
+			if (info == null)
+				return null;
+			FixedPointPreCompInfo fixed = FixedPointUtil.getFixedPointPreCompInfo(info);
+			return fixed.getPreComp() == null ? null : fixed;
+		}
+
+		@Override
+		public void precompute() {
+			// Multiplying builds the table (with the width BouncyCastle uses for this curve).
+			if (getPreCompInfo() == null)
+				multiply(BigInteger.ONE);
+		}
+
+		/**
+		 * Length of an uncompressed point.
+		 */
+		int getPointLength() {
+			return 1 + 2 * ((base.getCurve().getFieldSize() + 7) / 8);
+		}
+
+		@Override
+		public int getExportedTableSize() {
+			precompute();
+			return 3 * 4 + 4 + base.getEncoded(true).length + getPreCompInfo().getPreComp().length * getPointLength();
+		}
+
+		@Override
+		public void exportTable(ByteBuffer out) {
+			precompute();
+			FixedPointPreCompInfo info = getPreCompInfo();
+			ECPoint[] points = info.getPreComp();
+			int pointLen = getPointLength();
+			out.putInt(info.getWidth());
+			out.putInt(points.length);
+			out.putInt(pointLen);
+			PrecomputedTables.putBytes(out, base.getEncoded(true));
+			// The table's points are already normalized, so encoding them is cheap.
+			for (ECPoint point : points) {
+				if (point.isInfinity())
+					out.put(new byte[pointLen]);
+				else
+					out.put(point.getEncoded(false));
+			}
+		}
+
+		@Override
+		public void importTable(ByteBuffer in) throws IOException {
+			ECCurve curve = base.getCurve();
+			try {
+				int width = in.getInt();
+				int count = in.getInt();
+				int pointLen = in.getInt();
+				if (pointLen != getPointLength() || width < 1 || width > 16 || count != 1 << width)
+					throw new IOException("Table parameters don't match");
+				if (!Arrays.equals(PrecomputedTables.getBytes(in), base.getEncoded(true)))
+					throw new IOException("Table is for a different base");
+
+				ECPoint[] points = new ECPoint[count];
+				byte[] encoded = new byte[pointLen];
+				for (int i = 0; i < count; ++i) {
+					in.get(encoded);
+					points[i] = encoded[0] == 0 ? curve.getInfinity() : curve.decodePoint(encoded);
+				}
+				if (!checkTable(points, width))
+					throw new IOException("Table doesn't match the base");
+				FixedPointPreCompInfo info = new FixedPointPreCompInfo();
+				info.setPreComp(points);
+				info.setWidth(width);
+				curve.setPreCompInfo(base, FixedPointUtil.PRECOMP_NAME, info);
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Table is truncated");
+			} catch (IllegalArgumentException e) {
+				// Invalid point encoding
+				throw new IOException(e);
+			}
+		}
+
+		/**
+		 * Check a comb table for the base, in which points[j] is the sum of 2^(i*d)*base over the bits i set in j
+		 * (where d is the number of columns). The sum of a random multiple of the base (computed with the table)
+		 * and of all the table's points is compared with a multiplication that doesn't use the table, so a wrong
+		 * point anywhere in the table is detected.
+		 */
+		boolean checkTable(ECPoint[] points, int width) {
+			int d = (FixedPointUtil.getCombSize(base.getCurve()) + width - 1) / width;
+			BigInteger k = new BigInteger(width * d, new SecureRandom());
+
+			// Column c (from the top) selects the point whose bit i is bit i*d+c of k.
+			ECPoint acc = base.getCurve().getInfinity();
+			for (int c = d - 1; c >= 0; --c) {
+				int index = 0;
+				for (int i = 0; i < width; ++i) {
+					if (k.testBit(i * d + c))
+						index |= 1 << i;
+				}
+				acc = acc.twice().add(points[index]);
+			}
+
+			// Each 2^(i*d)*base appears in half of the points.
+			BigInteger total = k;
+			for (int i = 0; i < width; ++i)
+				total = total.add(BigInteger.ONE.shiftLeft(i * d + width - 1));
+			for (ECPoint point : points)
+				acc = acc.add(point);
+			return acc.equals(base.multiply(total.mod(order)));
+		}
+	}
+
+	@Override
+	public FixedBaseMultiplier<ECPoint> getFixedBaseMultiplier(ECPoint base) {
+		if (base.equals(getGenerator()))
+			return getGeneratorMultiplier();
+		return new CombMultiplier(base, curveParams.getN());
+	}
+
+	synchronized FixedBaseMultiplier<ECPoint> getGeneratorMultiplier() {
+		if (generatorMultiplier == null)
+			generatorMultiplier = new CombMultiplier(getGenerator(), curveParams.getN());
+		return generatorMultiplier;
+	}
+
 	@Override
 	public ECPoint add(ECPoint el, ECPoint el2) {
 		return el.add(el2);
 	}
 
+	/**
+	 * The points are added in projective coordinates, which needs no field inversions;
+	 * the sum is returned without normalizing it.
+	 */
+	@Override
+	public ECPoint sum(Iterable<ECPoint> elements) {
+		ECPoint acc = zero();
+		for (ECPoint x : elements)
+			acc = acc.add(x);
+		return acc;
+	}
+
 	@Override
 	public ECPoint multiply(ECPoint g, BigInteger integer) {
 		return g.multiply(integer);
 	}
 
+	/**
+	 * For a few bases, we use BouncyCastle's interleaved wNAF multiplication;
+	 * for many bases, the generic bucket method (see {@link MultiExp}) is faster.
+	 */
+	@Override
+	public ECPoint multiExp(List<ECPoint> bases, List<BigInteger> scalars) {
+		if (bases.size() != scalars.size())
+			throw new IllegalArgumentException("Number of bases (" + bases.size()
+					+ ") and scalars (" + scalars.size() + ") must be equal");
+		int n = bases.size();
+		if (n == 0)
+			return zero();
+		if (n >= MultiExp.PIPPENGER_THRESHOLD)
+			return MultiExp.multiExp(this, bases, scalars);
+
+		BigInteger order = curveParams.getN();
+		ECPoint[] ps = new ECPoint[n];
+		BigInteger[] ks = new BigInteger[n];
+		for (int i = 0; i < n; ++i) {
+			ps[i] = bases.get(i);
+			ks[i] = scalars.get(i).mod(order);
+		}
+		return ECAlgorithms.sumOfMultiplies(ps, ks);
+	}
+
 	@Override
 	public ECPoint negate(ECPoint g) {
 		if (g.isInfinity())
@@ -72,13 +332,24 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
 		return g.negate();
 	}
 
+	/**
+	 * Negating a point is cheap (it only negates the y coordinate), so this simply negates every point.
+	 */
+	@Override
+	public List<ECPoint> negateAll(List<ECPoint> elements) {
+		List<ECPoint> result = new ArrayList<ECPoint>(elements.size());
+		for (ECPoint x : elements)
+			result.add(negate(x));
+		return result;
+	}
+
 	/**
 	 * Return random point by multiplying base point with
-	 * a random scalar (there are more efficient ways of doing this)
+	 * a random scalar (using the generator's precomputed table).
 	 */
 	@Override
 	public ECPoint sample(Random rand) {
-		return curveParams.getG().multiply(
+		return getGeneratorMultiplier().multiply(
 				IntegerUtils.getRandomInteger(curveParams.getN(), rand));
 	}
 
@@ -95,26 +366,138 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
 		if (g.isInfinity())
 			return true;
 		
+		return onCurve(g.normalize());
+	}
+
+	/**
+	 * Check the curve equation for a normalized (affine) point.
+	 */
+	boolean onCurve(ECPoint normalized) {
 		ECCurve curve = curveParams.getCurve();
 		
 		ECFieldElement A = curve.getA();
 		ECFieldElement B = curve.getB();
 		
-		ECFieldElement X = g.normalize().getXCoord();
-		ECFieldElement Y = g.normalize().getYCoord();
+		ECFieldElement X = normalized.getXCoord();
+		ECFieldElement Y = normalized.getYCoord();
 		
 		ECFieldElement X3 = X.square().multiply(X);
 		
 		return Y.square().equals(X3.add(A.multiply(X)).add(B));
 	}
 
+	/**
+	 * Check that all the points are on the curve. The points are normalized together
+	 * (using a single field inversion for the whole batch, rather than one per point),
+	 * and then the curve equation is checked for each. The check is exact.
+	 */
+	@Override
+	public boolean containsAll(Collection<ECPoint> elements) {
+		ECPoint[] points = elements.toArray(new ECPoint[elements.size()]);
+		if (!normalizeAll(points))
+			return false;
+		for (ECPoint point : points) {
+			if (!point.isInfinity() && !onCurve(point))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Normalize the points in place, using a single field inversion for the whole array.
+	 * Points created with an equal (but not identical) curve object are imported to the group's curve.
+	 * @return false if some point is on a different curve (in which case the array is not normalized).
+	 */
+	boolean normalizeAll(ECPoint[] points) {
+		ECCurve curve = curveParams.getCurve();
+		for (int i = 0; i < points.length; ++i) {
+			if (points[i].getCurve() != curve) {
+				if (!curve.equals(points[i].getCurve()))
+					return false;
+				points[i] = curve.importPoint(points[i]);
+			}
+		}
+		curve.normalizeAll(points);
+		return true;
+	}
+
 	@Override
 	public ECPoint zero() {
 		return curveParams.getCurve().getInfinity();
 	}
 
+	/**
+	 * A bounded cache of decoded points, keyed by their encoding.
+	 * When full, the least recently used entry is evicted.
+	 */
+	static class DecodeCache extends LinkedHashMap<ByteBuffer, ECPoint> {
+		private static final long serialVersionUID = 1L;
+
+		final int maxEntries;
+		long hits;
+		long misses;
+
+		DecodeCache(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer, ECPoint> eldest) {
+			return size() > maxEntries;
+		}
+	}
+
+	/**
+	 * Cache up to maxEntries decoded points. Decompressing a point costs a square root in the
+	 * field; with the cache, decoding values that are received repeatedly (e.g., public keys or
+	 * commitment parameters) costs only a lookup after the first time.
+	 * The cache is disabled by default.
+	 * @param maxEntries the maximum number of cached points (0 disables the cache).
+	 */
+	public synchronized void setDecodeCacheSize(int maxEntries) {
+		if (maxEntries < 0)
+			throw new IllegalArgumentException("Cache size must be non-negative");
+		decodeCache = maxEntries > 0 ? new DecodeCache(maxEntries) : null;
+	}
+
+	/**
+	 * @return the number of decodings answered from the cache (since it was enabled).
+	 */
+	public synchronized long getDecodeCacheHits() {
+		return decodeCache == null ? 0 : decodeCache.hits;
+	}
+
+	/**
+	 * @return the number of decodings not found in the cache (since it was enabled).
+	 */
+	public synchronized long getDecodeCacheMisses() {
+		return decodeCache == null ? 0 : decodeCache.misses;
+	}
+
 	public ECPoint decode(byte[] encoded) {
-		return curveParams.getCurve().decodePoint(encoded);
+		DecodeCache cache;
+		synchronized (this) {
+			cache = decodeCache;
+		}
+		if (cache == null)
+			return curveParams.getCurve().decodePoint(encoded);
+
+		ByteBuffer key = ByteBuffer.wrap(encoded.clone());
+		synchronized (cache) {
+			ECPoint point = cache.get(key);
+			if (point != null) {
+				++cache.hits;
+				return point;
+			}
+			++cache.misses;
+		}
+		// Decode outside the lock; decodePoint throws an exception for invalid encodings, which are not cached.
+		ECPoint point = curveParams.getCurve().decodePoint(encoded);
+		synchronized (cache) {
+			cache.put(key, point);
+		}
+		return point;
 	}
 	
 //	@Override
@@ -126,7 +509,7 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
 	@Override
 	public ECPoint decode(SendableInput in) throws IOException {
 		byte[] encoded = in.readObject(byte[].class);
-		return curveParams.getCurve().decodePoint(encoded);
+		return decode(encoded);
 	}
 
 	public byte[] encode(ECPoint g) {
@@ -147,13 +530,170 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
 	}
 	
 	/**
-	 * The dense decoding uses the input as a random integer
+	 * @return the length of a point's encoding in {@link #encodeAll(ECPoint[])}: a compressed
+	 * point (one byte for the sign of y and the x coordinate, padded to the field size).
+	 */
+	public int getEncodedLength() {
+		return 1 + (curveParams.getCurve().getFieldSize() + 7) / 8;
+	}
+
+	/**
+	 * Encode an array of points as consecutive fixed-width compressed points (see {@link #getEncodedLength()}),
+	 * with no length prefixes. All the points are normalized together, using a single field inversion
+	 * (encoding each point separately costs an inversion per point).
+	 * The point at infinity is encoded as a block of zeros.
+	 * The input array is not modified.
+	 */
+	public byte[] encodeAll(ECPoint[] points) {
+		ECPoint[] normalized = points.clone();
+		if (!normalizeAll(normalized))
+			throw new IllegalArgumentException("Point is not on the group's curve");
+
+		int len = getEncodedLength();
+		byte[] out = new byte[points.length * len];
+		for (int i = 0; i < normalized.length; ++i) {
+			if (normalized[i].isInfinity())
+				continue;
+			byte[] encoded = normalized[i].getEncoded(true);
+			System.arraycopy(encoded, 0, out, i * len, len);
+		}
+		return out;
+	}
+
+	/**
+	 * Decode an array of points encoded by {@link #encodeAll(ECPoint[])}.
+	 * @throws IllegalArgumentException if the input is not a valid encoding.
+	 */
+	public ECPoint[] decodeAll(byte[] encoded) {
+		int len = getEncodedLength();
+		if (encoded.length % len != 0)
+			throw new IllegalArgumentException("Encoding length " + encoded.length
+					+ " is not a multiple of the point length " + len);
+		return decodeAll(encoded, encoded.length / len);
+	}
+
+	ECPoint[] decodeAll(byte[] encoded, int count) {
+		ECCurve curve = curveParams.getCurve();
+		int len = getEncodedLength();
+		ECPoint[] points = new ECPoint[count];
+		byte[] block = new byte[len];
+		for (int i = 0; i < count; ++i) {
+			System.arraycopy(encoded, i * len, block, 0, len);
+			if (block[0] == 0) {
+				for (byte b : block) {
+					if (b != 0)
+						throw new IllegalArgumentException("Invalid encoding of point at infinity");
+				}
+				points[i] = curve.getInfinity();
+			} else {
+				points[i] = curve.decodePoint(block);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * A stream encoder for arrays of points: the number of points followed by
+	 * the output of {@link #encodeAll(ECPoint[])}.
+	 */
+	public StreamEncoder<ECPoint[]> getArrayEncoder() {
+		return new StreamEncoder<ECPoint[]>() {
+			@Override
+			public void encode(ECPoint[] points, SendableOutput out) throws IOException {
+				out.writeInt(points.length);
+				out.write(encodeAll(points));
+			}
+
+			@Override
+			public ECPoint[] decode(SendableInput in) throws IOException {
+				int count = in.readInt();
+				if (count < 0 || count > Integer.MAX_VALUE / getEncodedLength())
+					throw new IOException("Invalid number of points: " + count);
+				byte[] encoded = new byte[count * getEncodedLength()];
+				in.readFully(encoded);
+				try {
+					return decodeAll(encoded, count);
+				} catch (IllegalArgumentException e) {
+					throw new IOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Return the simplified SWU map for the curve, or null if it can't be used for dense decoding: the curve
+	 * must be supported by {@link SimplifiedSWUMap}, and its cofactor must be known (so that points can be
+	 * mapped into the group).
+	 */
+	synchronized SimplifiedSWUMap getHashMap() {
+		if (!hashMapChecked) {
+			ECCurve curve = curveParams.getCurve();
+			if (SimplifiedSWUMap.supports(curve) && curve.getCofactor() != null && curve.getOrder() != null
+					&& curve.getOrder().equals(curveParams.getN().multiply(curve.getCofactor())))
+				hashMap = new SimplifiedSWUMap(curve);
+			hashMapChecked = true;
+		}
+		return hashMap;
+	}
+
+	/**
+	 * Domain-separation prefix for expanding the input of {@link #denseDecode(byte[])}.
+	 */
+	final static byte[] DENSE_DECODE_TAG = "qilin-ECGroup-denseDecode".getBytes();
+
+	/**
+	 * Number of extra bits in each field element derived from the input (so that reducing it modulo p
+	 * has negligible bias).
+	 */
+	final static int DENSE_DECODE_SECURITY_BITS = 128;
+
+	/**
+	 * Expand the input to count field elements, using SHA-256 in counter mode.
+	 */
+	ECFieldElement[] expandToField(byte[] input, int count) {
+		ECCurve curve = curveParams.getCurve();
+		int elementLen = (curve.getFieldSize() + DENSE_DECODE_SECURITY_BITS + 7) / 8;
+		SHA256Digest digest = new SHA256Digest();
+		byte[] expanded = new byte[count * elementLen + digest.getDigestSize()];
+		for (int i = 0, pos = 0; pos < count * elementLen; ++i, pos += digest.getDigestSize()) {
+			digest.update(DENSE_DECODE_TAG, 0, DENSE_DECODE_TAG.length);
+			digest.update((byte) i);
+			digest.update(input, 0, input.length);
+			digest.doFinal(expanded, pos);
+		}
+		BigInteger p = curve.getField().getCharacteristic();
+		ECFieldElement[] out = new ECFieldElement[count];
+		for (int i = 0; i < count; ++i) {
+			byte[] element = new byte[elementLen];
+			System.arraycopy(expanded, i * elementLen, element, 0, elementLen);
+			out[i] = curve.fromBigInteger(new BigInteger(1, element).mod(p));
+		}
+		return out;
+	}
+
+	/**
+	 * For prime-field curves with A, B != 0, the input is hashed to two field elements,
+	 * which are mapped to the curve with the simplified SWU map ({@link SimplifiedSWUMap}); the output is their sum
+	 * (times the cofactor). This is the "random oracle" construction of RFC 9380 (with SHA-256 in counter mode
+	 * to expand the input), and costs a field inversion and two or three square roots, but no scalar multiplication.
+	 * The discrete log of the output is not known.
+	 * <p>
+	 * For other curves, the dense decoding uses the input as a random integer
 	 * and multiplies the group generator by that integer.
 	 */
 	@Override
 	public ECPoint denseDecode(byte[] input) {
+		SimplifiedSWUMap map = getHashMap();
+		if (map != null) {
+			ECPoint[] points = map.mapAll(expandToField(input, 2));
+			ECPoint point = points[0].add(points[1]);
+			BigInteger cofactor = curveParams.getCurve().getCofactor();
+			if (!cofactor.equals(BigInteger.ONE))
+				point = point.multiply(cofactor);
+			return point;
+		}
 		BigInteger rand = new BigInteger(1, input);
-		return getGenerator().multiply(rand);
+		return getGeneratorMultiplier().multiply(rand);
 	}
 
 	@Override
@@ -242,14 +782,9 @@ public class ECGroup implements CyclicGroup<ECPoint>, ByteEncoder<ECPoint>, Stre
                 .shiftLeft(BLOCK_LEN * 8)
                 .subtract(BigInteger.ONE);
         BigInteger x = encodedMsg.normalize().getAffineXCoord().toBigInteger();
-        byte[] xBytes = x.and(blockMask).toByteArray();
-
-        if (xBytes[0] != 0) {
-            System.arraycopy(xBytes, 0, decodedMsg, 0, Math.min(xBytes.length, decodedMsg.length));
-        } else {
-            // BigInteger returns zero-pads to prevent a negative number.
-            System.arraycopy(xBytes, 1, decodedMsg, 0, Math.min(xBytes.length - 1, decodedMsg.length));
-        }
+        // The message block is right-aligned (leading zero bytes of the message are not part of xBytes)
+        byte[] xBytes = BigIntegers.asUnsignedByteArray(BLOCK_LEN, x.and(blockMask));
+        System.arraycopy(xBytes, 0, decodedMsg, 0, Math.min(xBytes.length, decodedMsg.length));
 
     }
 
@@ -0,0 +1,213 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.factcenter.qilin.primitives.StreamingRandomOracle;
+import org.factcenter.qilin.util.PRGRandom;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * "random oracle" implementation using AES with a fixed, public key.
+ * Denoting the fixed-key permutation by &pi;, output block j of the digest of x at index i is
+ * &pi;(&pi;(x) &oplus; t) &oplus; &pi;(x), where the tweak t encodes i, j and the length of x
+ * (the tweakable correlation-robust hash of Guo, Katz, Wang and Yu, "Efficient and Secure Multiparty
+ * Computation from Fixed-Key Block Ciphers").
+ * <p>
+ * This is much faster than a cryptographic digest on short inputs, such as the k-bit rows hashed in OT extension.
+ * Inputs of up to 16 bytes are used directly (zero padded); longer inputs are first compressed
+ * to 16 bytes with SHA-256 (this is also marked in the tweak), so they gain nothing in speed.
+ * Note that the construction is only as strong as the correlation-robustness of fixed-key AES,
+ * which is a weaker assumption than a random oracle: it should only be used where the protocol requires
+ * a correlation-robust (or tweakable correlation-robust) hash.
+ * <p>
+ * AES is computed by the JCE provider, which uses the AES instructions where the JVM supports them
+ * (unlike table-based implementations, these do not leak the inputs through cache timing).
+ * All the output blocks of a digest are encrypted in a single call.
+ */
+public class FixedKeyAESOracle implements StreamingRandomOracle {
+	final static int BLOCK_SIZE = 16;
+
+	/**
+	 * The fixed key (the first 128 bits of the fractional part of pi).
+	 */
+	final static byte[] DEFAULT_KEY = {
+		(byte) 0x24, (byte) 0x3f, (byte) 0x6a, (byte) 0x88, (byte) 0x85, (byte) 0xa3, (byte) 0x08, (byte) 0xd3,
+		(byte) 0x13, (byte) 0x19, (byte) 0x8a, (byte) 0x2e, (byte) 0x03, (byte) 0x70, (byte) 0x73, (byte) 0x44
+	};
+
+	final static String LONG_INPUT_ALGORITHM = "SHA-256";
+
+	final static String CIPHER = "AES/ECB/NoPadding";
+
+	/**
+	 * The fixed-key permutation (initialized once).
+	 */
+	Cipher aes;
+
+	/**
+	 * The input (if it is short).
+	 */
+	byte[] input = new byte[BLOCK_SIZE];
+
+	/**
+	 * Total length of the input.
+	 */
+	int inputLen;
+
+	/**
+	 * Used to compress inputs longer than a block (created on first use).
+	 */
+	MessageDigest md;
+
+	/**
+	 * True if the input is too long and is being hashed by md.
+	 */
+	boolean compressed;
+
+	/**
+	 * &pi;(x), and whether it was computed for the current input.
+	 */
+	byte[] px = new byte[BLOCK_SIZE];
+	boolean pxValid;
+
+	/**
+	 * The tweaked blocks of the output (grown as needed).
+	 */
+	byte[] blocks = new byte[BLOCK_SIZE];
+
+	public FixedKeyAESOracle(byte[] key) {
+		try {
+			aes = Cipher.getInstance(CIPHER);
+			aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+			throw new RuntimeException("Should never happen! Cipher " + CIPHER + " must be supported!", e);
+		} catch (InvalidKeyException e) {
+			throw new IllegalArgumentException("Invalid AES key", e);
+		}
+	}
+
+	public FixedKeyAESOracle() {
+		this(DEFAULT_KEY);
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(input, (byte) 0);
+		inputLen = 0;
+		compressed = false;
+		pxValid = false;
+	}
+
+	@Override
+	public void update(byte[] in, int offs, int len) {
+		pxValid = false;
+		if (!compressed && inputLen + len <= BLOCK_SIZE) {
+			System.arraycopy(in, offs, input, inputLen, len);
+		} else {
+			if (!compressed) {
+				if (md == null) {
+					try {
+						md = MessageDigest.getInstance(LONG_INPUT_ALGORITHM);
+					} catch (NoSuchAlgorithmException nsa) {
+						throw new RuntimeException(nsa.getMessage());
+					}
+				}
+				md.reset();
+				md.update(input, 0, inputLen);
+				compressed = true;
+			}
+			md.update(in, offs, len);
+		}
+		inputLen += len;
+	}
+
+	@Override
+	public byte[] digest(int index, int outlen) {
+		byte[] retval = new byte[outlen];
+		digest(index, retval, 0, outlen);
+		return retval;
+	}
+
+	/**
+	 * Write the output for the input and the given index to out.
+	 * &pi;(x) is only computed once for each input, so this method can be called again with a different
+	 * index without calling {@link #reset()} and {@link #update(byte[], int, int)}.
+	 */
+	@Override
+	public void digest(int index, byte[] out, int offs, int outlen) {
+		if (!pxValid) {
+			if (compressed) {
+				byte[] h = md.digest();
+				System.arraycopy(h, 0, input, 0, BLOCK_SIZE);
+			}
+			encrypt(input, px, BLOCK_SIZE);
+			pxValid = true;
+		}
+
+		int len = (outlen + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+		if (blocks.length < len)
+			blocks = new byte[len];
+		for (int j = 0, i = 0; i < len; ++j, i += BLOCK_SIZE) {
+			// block j = pi(x) ^ tweak
+			System.arraycopy(px, 0, blocks, i, BLOCK_SIZE);
+			xorInt(blocks, i, index);
+			xorInt(blocks, i + 4, j);
+			xorInt(blocks, i + 8, inputLen);
+			if (compressed)
+				blocks[i + 12] ^= 1;
+		}
+
+		encrypt(blocks, blocks, len);
+		for (int i = 0; i < outlen; ++i)
+			out[offs + i] = (byte) (blocks[i] ^ px[i % BLOCK_SIZE]);
+	}
+
+	/**
+	 * Apply the permutation to the first len bytes of in (a multiple of the block size).
+	 */
+	void encrypt(byte[] in, byte[] out, int len) {
+		try {
+			aes.doFinal(in, 0, len, out, 0);
+		} catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+			throw new RuntimeException("Cipher " + CIPHER + " doesn't match its stated sizes!", e);
+		}
+	}
+
+	/**
+	 * XOR an integer into a byte array, LSB first.
+	 */
+	static void xorInt(byte[] arr, int pos, int n) {
+		for (int i = 0; i < 4; ++i) {
+			arr[pos + i] ^= (byte) (n & 0xff);
+			n >>>= 8;
+		}
+	}
+
+	/**
+	 * Return a pseudorandom stream seeded with the digest of the input.
+	 * This resets the oracle's input.
+	 */
+	@Override
+	public Random getRandomStream(byte[] input) {
+		reset();
+		update(input, 0, input.length);
+		byte[] seed = digest(0, BLOCK_SIZE);
+		reset();
+		return new PRGRandom(seed);
+	}
+
+	@Override
+	public int getNativeLength() {
+		return BLOCK_SIZE;
+	}
+}
@@ -0,0 +1,230 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECFieldElement;
+import org.bouncycastle.math.ec.ECPoint;
+import org.factcenter.qilin.util.IntegerUtils;
+
+import java.math.BigInteger;
+
+/**
+ * The simplified Shallue-van de Woestijne-Ulas map from the field to the points of a curve
+ * y^2 = x^3 + Ax + B over a prime field, with A and B both nonzero
+ * (as specified in RFC 9380, "Hashing to Elliptic Curves", section 6.6.2).
+ * <p>
+ * Mapping an element costs one field inversion (shared between the elements in
+ * {@link #mapAll(ECFieldElement[])}) and one or two square roots, but no scalar multiplication.
+ * The map is deterministic, but it is not uniform on its own and only reaches about half of the points;
+ * {@link ECGroup#denseDecode(byte[])} adds the images of two independent field elements, which gives
+ * a distribution that is statistically close to uniform.
+ */
+public class SimplifiedSWUMap {
+	final ECCurve curve;
+	final BigInteger p;
+	final ECFieldElement A;
+	final ECFieldElement B;
+
+	/**
+	 * A non-square constant chosen as in RFC 9380 (the first of 1, -1, 2, -2, ... satisfying its criteria).
+	 */
+	final ECFieldElement Z;
+
+	/**
+	 * -B/A
+	 */
+	final ECFieldElement minusBOverA;
+
+	/**
+	 * B/(ZA): the value of x1 in the exceptional case.
+	 */
+	final ECFieldElement exceptionalX;
+
+	/**
+	 * Check whether the map can be used for a curve.
+	 */
+	public static boolean supports(ECCurve curve) {
+		return curve instanceof ECCurve.AbstractFp && !curve.getA().isZero() && !curve.getB().isZero();
+	}
+
+	public SimplifiedSWUMap(ECCurve curve) {
+		if (!supports(curve))
+			throw new IllegalArgumentException("Simplified SWU requires a prime-field curve with A, B != 0");
+		this.curve = curve;
+		this.p = curve.getField().getCharacteristic();
+		this.A = curve.getA();
+		this.B = curve.getB();
+		this.Z = curve.fromBigInteger(findZ());
+		this.minusBOverA = B.divide(A).negate();
+		this.exceptionalX = B.divide(Z.multiply(A));
+	}
+
+	public ECFieldElement getZ() {
+		return Z;
+	}
+
+	/**
+	 * g(x) = x^3 + Ax + B
+	 */
+	ECFieldElement g(ECFieldElement x) {
+		return x.square().add(A).multiply(x).add(B);
+	}
+
+	/**
+	 * Map a field element to a point on the curve (never the point at infinity).
+	 * The sign (parity) of the y coordinate equals the sign of u.
+	 */
+	public ECPoint map(ECFieldElement u) {
+		return mapAll(new ECFieldElement[] { u })[0];
+	}
+
+	/**
+	 * Map several field elements to the curve, using a single field inversion for all of them
+	 * (Montgomery's trick).
+	 */
+	public ECPoint[] mapAll(ECFieldElement[] us) {
+		int n = us.length;
+		ECFieldElement[] zu2 = new ECFieldElement[n];
+		ECFieldElement[] denominators = new ECFieldElement[n];
+		// prefix[i] = the product of the nonzero denominators before i
+		ECFieldElement[] prefix = new ECFieldElement[n + 1];
+		prefix[0] = curve.fromBigInteger(BigInteger.ONE);
+		for (int i = 0; i < n; ++i) {
+			zu2[i] = Z.multiply(us[i].square());
+			denominators[i] = zu2[i].square().add(zu2[i]);
+			prefix[i + 1] = denominators[i].isZero() ? prefix[i] : prefix[i].multiply(denominators[i]);
+		}
+
+		ECPoint[] points = new ECPoint[n];
+		ECFieldElement inv = prefix[n].invert();
+		for (int i = n - 1; i >= 0; --i) {
+			ECFieldElement x1;
+			if (denominators[i].isZero()) {
+				x1 = exceptionalX;
+			} else {
+				x1 = minusBOverA.multiply(inv.multiply(prefix[i]).addOne());
+				inv = inv.multiply(denominators[i]);
+			}
+			points[i] = map(us[i], zu2[i], x1);
+		}
+		return points;
+	}
+
+	/**
+	 * Finish the map given x1 = (-B/A)(1 + 1/(Z^2u^4 + Zu^2)) (or B/(ZA) in the exceptional case).
+	 */
+	ECPoint map(ECFieldElement u, ECFieldElement zu2, ECFieldElement x1) {
+		ECFieldElement x = x1;
+		ECFieldElement y = g(x1).sqrt();
+		if (y == null) {
+			// g(x1) is not a square, so g(x2) = Z^3 u^6 g(x1) is.
+			x = zu2.multiply(x1);
+			y = g(x).sqrt();
+		}
+		if (y.testBitZero() != u.testBitZero())
+			y = y.negate();
+		return curve.createPoint(x.toBigInteger(), y.toBigInteger());
+	}
+
+	/**
+	 * Find Z as in RFC 9380, section H.2: Z is a non-square, Z != -1, g(x) - Z is irreducible and
+	 * g(B/(ZA)) is a square.
+	 */
+	BigInteger findZ() {
+		BigInteger a = A.toBigInteger();
+		BigInteger b = B.toBigInteger();
+		BigInteger minusOne = p.subtract(BigInteger.ONE);
+		for (int i = 1; ; ++i) {
+			for (BigInteger c : new BigInteger[] { BigInteger.valueOf(i), BigInteger.valueOf(-i) }) {
+				BigInteger z = c.mod(p);
+				if (z.signum() == 0 || z.equals(minusOne) || IntegerUtils.jacobi(z, p) != -1)
+					continue;
+				if (hasRoot(a, b.subtract(z).mod(p)))
+					continue;
+				BigInteger x = b.multiply(z.multiply(a).modInverse(p)).mod(p);
+				BigInteger gx = x.multiply(x).add(a).multiply(x).add(b).mod(p);
+				if (gx.signum() != 0 && IntegerUtils.jacobi(gx, p) != 1)
+					continue;
+				return z;
+			}
+		}
+	}
+
+	/**
+	 * Check whether x^3 + ax + b has a root in F_p (a cubic is irreducible iff it has no roots).
+	 * The roots of f are the roots of gcd(f, x^p - x).
+	 */
+	boolean hasRoot(BigInteger a, BigInteger b) {
+		// x^3 = -ax - b (mod f); polynomials are represented by their coefficients, constant term first.
+		BigInteger[] xp = polyPowX(p, a, b);
+		xp[1] = xp[1].subtract(BigInteger.ONE).mod(p);
+
+		BigInteger[] f = { b, a, BigInteger.ZERO, BigInteger.ONE };
+		BigInteger[] r = xp;
+		// Euclid's algorithm
+		while (degree(r) >= 0) {
+			BigInteger[] tmp = polyMod(f, r);
+			f = r;
+			r = tmp;
+		}
+		return degree(f) > 0;
+	}
+
+	/**
+	 * Compute x^e modulo x^3 + ax + b.
+	 */
+	BigInteger[] polyPowX(BigInteger e, BigInteger a, BigInteger b) {
+		BigInteger[] result = { BigInteger.ONE, BigInteger.ZERO, BigInteger.ZERO };
+		for (int i = e.bitLength() - 1; i >= 0; --i) {
+			result = polyMulMod(result, result, a, b);
+			if (e.testBit(i)) {
+				// Multiply by x
+				BigInteger top = result[2];
+				result = new BigInteger[] {
+						top.multiply(b).negate().mod(p),
+						result[0].subtract(top.multiply(a)).mod(p),
+						result[1] };
+			}
+		}
+		return result;
+	}
+
+	BigInteger[] polyMulMod(BigInteger[] u, BigInteger[] v, BigInteger a, BigInteger b) {
+		BigInteger[] prod = new BigInteger[5];
+		for (int i = 0; i < prod.length; ++i)
+			prod[i] = BigInteger.ZERO;
+		for (int i = 0; i < 3; ++i)
+			for (int j = 0; j < 3; ++j)
+				prod[i + j] = prod[i + j].add(u[i].multiply(v[j]));
+		// Reduce using x^3 = -ax - b, from the top down.
+		for (int d = 4; d >= 3; --d) {
+			BigInteger c = prod[d].mod(p);
+			prod[d] = BigInteger.ZERO;
+			prod[d - 2] = prod[d - 2].subtract(c.multiply(a));
+			prod[d - 3] = prod[d - 3].subtract(c.multiply(b));
+		}
+		return new BigInteger[] { prod[0].mod(p), prod[1].mod(p), prod[2].mod(p) };
+	}
+
+	static int degree(BigInteger[] poly) {
+		for (int i = poly.length - 1; i >= 0; --i) {
+			if (poly[i].signum() != 0)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * The remainder of u divided by v (v nonzero).
+	 */
+	BigInteger[] polyMod(BigInteger[] u, BigInteger[] v) {
+		BigInteger[] r = u.clone();
+		int dv = degree(v);
+		BigInteger lead = v[dv].modInverse(p);
+		for (int d = degree(r); d >= dv; d = degree(r)) {
+			BigInteger c = r[d].multiply(lead).mod(p);
+			for (int i = 0; i <= dv; ++i)
+				r[d - dv + i] = r[d - dv + i].subtract(c.multiply(v[i])).mod(p);
+		}
+		return r;
+	}
+}
@@ -1,6 +1,7 @@
 package org.factcenter.qilin.primitives.concrete;
 
 import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
 import org.factcenter.qilin.util.ByteEncoder;
 import org.factcenter.qilin.comm.SendableInput;
 import org.factcenter.qilin.comm.SendableOutput;
@@ -9,6 +10,9 @@ import org.factcenter.qilin.util.StreamEncoder;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 
 
@@ -33,16 +37,49 @@ public class Zn implements CyclicGroup<BigInteger>, StreamEncoder<BigInteger>, B
 		return el.add(el2).mod(n);
 	}
 
+	/**
+	 * The elements are added as integers, and the sum is reduced modulo n once.
+	 */
+	@Override
+	public BigInteger sum(Iterable<BigInteger> elements) {
+		BigInteger acc = BigInteger.ZERO;
+		for (BigInteger x : elements)
+			acc = acc.add(x);
+		return acc.mod(n);
+	}
+
 	@Override
 	public BigInteger multiply(BigInteger g, BigInteger integer) {
 		return g.multiply(integer);
 	}
 
+	/**
+	 * In an additive group of integers the linear combination can be computed directly.
+	 */
+	@Override
+	public BigInteger multiExp(List<BigInteger> bases, List<BigInteger> scalars) {
+		if (bases.size() != scalars.size())
+			throw new IllegalArgumentException("Number of bases (" + bases.size()
+					+ ") and scalars (" + scalars.size() + ") must be equal");
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < bases.size(); ++i)
+			sum = sum.add(bases.get(i).multiply(scalars.get(i)));
+		return sum.mod(n);
+	}
+
 	@Override
 	public BigInteger negate(BigInteger g) {
 		return g.negate().mod(n);
 	}
 
+	@Override
+	public List<BigInteger> negateAll(List<BigInteger> elements) {
+		List<BigInteger> result = new ArrayList<BigInteger>(elements.size());
+		for (BigInteger x : elements)
+			result.add(negate(x));
+		return result;
+	}
+
 	@Override
 	public BigInteger orderUpperBound() {
 		return n;
@@ -89,6 +126,15 @@ public class Zn implements CyclicGroup<BigInteger>, StreamEncoder<BigInteger>, B
 		return (g.signum() >= 0) && (g.compareTo(n) < 0);
 	}
 
+	@Override
+	public boolean containsAll(Collection<BigInteger> elements) {
+		for (BigInteger x : elements) {
+			if (!contains(x))
+				return false;
+		}
+		return true;
+	}
+
 	@Override
 	public BigInteger zero() {
 		return BigInteger.ZERO;
@@ -133,4 +179,22 @@ public class Zn implements CyclicGroup<BigInteger>, StreamEncoder<BigInteger>, B
 	public BigInteger getGenerator() {
 		return BigInteger.ONE;
 	}
+
+	/**
+	 * Multiplication in Z_n is a single integer multiplication, so there is nothing to precompute.
+	 */
+	@Override
+	public FixedBaseMultiplier<BigInteger> getFixedBaseMultiplier(final BigInteger base) {
+		return new FixedBaseMultiplier<BigInteger>() {
+			@Override
+			public BigInteger getBase() {
+				return base;
+			}
+
+			@Override
+			public BigInteger multiply(BigInteger scalar) {
+				return Zn.this.multiply(base, scalar);
+			}
+		};
+	}
 }
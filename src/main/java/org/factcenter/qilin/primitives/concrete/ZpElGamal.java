@@ -18,12 +18,20 @@ public class ZpElGamal {
 		public PK(Zpsafe grp, BigInteger pk) {
 			super(grp, pk);
 		}
+
+		public PK(Zpschnorr grp, BigInteger pk) {
+			super(grp, pk);
+		}
 	}
 	
 	static public class SK extends ElGamal.SK<BigInteger> {
 		public SK(Zpsafe grp, BigInteger sk) {
 			super(grp, sk);
 		}
+
+		public SK(Zpschnorr grp, BigInteger sk) {
+			super(grp, sk);
+		}
 	}
 
 	/**
@@ -37,4 +45,11 @@ public class ZpElGamal {
 		BigInteger sk = IntegerUtils.getRandomInteger(grp.orderUpperBound(), rand);
 		return sk;
 	}
+
+	/**
+	 * Generate a new private key for a Schnorr group (see {@link #generateSecretKey(Zpsafe, Random)}).
+	 */
+	public static BigInteger generateSecretKey(Zpschnorr grp, Random rand) {
+		return IntegerUtils.getRandomInteger(grp.orderUpperBound(), rand);
+	}
 }
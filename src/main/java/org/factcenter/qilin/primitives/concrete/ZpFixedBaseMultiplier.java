@@ -0,0 +1,268 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.factcenter.qilin.primitives.PrecomputedMultiplier;
+import org.factcenter.qilin.primitives.generic.WindowedFixedBaseMultiplier;
+import org.factcenter.qilin.util.MontgomeryModulus;
+import org.factcenter.qilin.util.PrecomputedTables;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * A fixed-base exponentiator for a subgroup of Z_p*.
+ * This is the same windowed method as {@link WindowedFixedBaseMultiplier}, except that the
+ * table is kept in Montgomery form (see {@link MontgomeryModulus}): an exponentiation is then
+ * one Montgomery multiplication per window, with no division and no allocation per step.
+ * Until the table is built, {@link BigInteger#modPow(BigInteger, BigInteger)} is used.
+ * <p>
+ * The table has 2^w-1 elements (of the size of the modulus) per w bits of the group order, so it is only
+ * small when the order is: with the default 5-bit window and a 2048-bit modulus, it takes about 450KB for a
+ * 256-bit order ({@link Zpschnorr}), but about 3.2MB for the 2047-bit order of a 2048-bit {@link Zpsafe}.
+ * A table is built for every base used more than a few times (e.g., each ElGamal public key or Pedersen
+ * commitment parameter), so tables larger than a limit ({@link #DEFAULT_MAX_TABLE_BYTES} by default) are never
+ * built: such multipliers always use modPow, and can't export or import a table. (Smaller windows don't help:
+ * at 2048 bits, windows of up to 4 bits were measured to be no faster than modPow.)
+ * <p>
+ * The table can be exported and imported (see {@link PrecomputedMultiplier}); the exported table consists of
+ * the window size, the number of windows, the number of limbs, the modulus and the base (as length-prefixed
+ * byte arrays), followed by the table entries as big-endian 32-bit limbs. An imported table is checked against
+ * the base (see {@link #checkTable(int[][][])}) before it is used.
+ */
+public class ZpFixedBaseMultiplier implements PrecomputedMultiplier<BigInteger> {
+	/**
+	 * Window size (larger than {@link WindowedFixedBaseMultiplier#DEFAULT_WINDOW_BITS}, which was measured to be
+	 * slower than {@link BigInteger#modPow(BigInteger, BigInteger)} here). The table has 31 elements
+	 * per 5 bits of the exponent (e.g., about 450KB for a 256-bit group order and a 2048-bit modulus).
+	 */
+	public final static int DEFAULT_WINDOW_BITS = 5;
+
+	/**
+	 * Default limit on the size of the table (in bytes).
+	 */
+	public final static int DEFAULT_MAX_TABLE_BYTES = 1 << 20;
+
+	final MontgomeryModulus mont;
+	final BigInteger p;
+	final BigInteger base;
+	final BigInteger order;
+	final int windowBits;
+	final int numWindows;
+	final int precomputeThreshold;
+
+	/**
+	 * True if the multiplier uses a table (the modulus is odd, and the table is within the size limit).
+	 */
+	final boolean useTable;
+
+	/**
+	 * Number of multiplications performed so far (until the table is built).
+	 */
+	int uses;
+
+	/**
+	 * table[i][d-1] = base^(d*2^(windowBits*i)), in Montgomery form. Null until built.
+	 */
+	volatile int[][][] table;
+
+	/**
+	 * @param maxTableBytes if the table would be larger than this, it is never built (and modPow is always used).
+	 */
+	public ZpFixedBaseMultiplier(Zpstar grp, BigInteger base, int windowBits, int precomputeThreshold, long maxTableBytes) {
+		this.mont = grp.mont;
+		this.p = grp.p;
+		this.base = base;
+		this.order = grp.orderUpperBound();
+		this.windowBits = windowBits;
+		this.numWindows = (order.bitLength() + windowBits - 1) / windowBits;
+		this.precomputeThreshold = precomputeThreshold;
+		this.useTable = mont != null && getTableBytes() <= maxTableBytes;
+	}
+
+	public ZpFixedBaseMultiplier(Zpstar grp, BigInteger base, int windowBits, int precomputeThreshold) {
+		this(grp, base, windowBits, precomputeThreshold, DEFAULT_MAX_TABLE_BYTES);
+	}
+
+	public ZpFixedBaseMultiplier(Zpstar grp, BigInteger base) {
+		this(grp, base, DEFAULT_WINDOW_BITS, WindowedFixedBaseMultiplier.DEFAULT_PRECOMPUTE_THRESHOLD);
+	}
+
+	/**
+	 * Return the size of the table entries in bytes (not counting the array headers).
+	 */
+	long getTableBytes() {
+		return (long) numWindows * ((1 << windowBits) - 1) * ((p.bitLength() + 31) / 32) * 4;
+	}
+
+	/**
+	 * Return true if the multiplier uses a table (false if it always uses modPow).
+	 */
+	public boolean usesTable() {
+		return useTable;
+	}
+
+	@Override
+	public BigInteger getBase() {
+		return base;
+	}
+
+	/**
+	 * Return the table, building it if the multiplier has been used often enough (otherwise return null).
+	 */
+	synchronized int[][][] getTable() {
+		if (table == null && useTable && ++uses > precomputeThreshold)
+			table = buildTable();
+		return table;
+	}
+
+	int[][][] buildTable() {
+		int digits = (1 << windowBits) - 1;
+		int[] scratch = mont.newScratch();
+		int[][][] t = new int[numWindows][digits][];
+		int[] windowBase = mont.toMontgomery(base);
+		for (int i = 0; i < numWindows; ++i) {
+			int[] cur = windowBase;
+			t[i][0] = cur;
+			for (int d = 1; d < digits; ++d) {
+				int[] next = new int[cur.length];
+				mont.multiply(cur, windowBase, next, scratch);
+				t[i][d] = cur = next;
+			}
+			// windowBase^(2^w)
+			int[] next = new int[cur.length];
+			mont.multiply(cur, windowBase, next, scratch);
+			windowBase = next;
+		}
+		return t;
+	}
+
+	@Override
+	public synchronized void precompute() {
+		if (table == null && useTable)
+			table = buildTable();
+	}
+
+	int[][][] getOrBuildTable() {
+		checkUsesTable();
+		precompute();
+		return table;
+	}
+
+	void checkUsesTable() {
+		if (mont == null)
+			throw new UnsupportedOperationException("No table for an even modulus");
+		if (!useTable)
+			throw new UnsupportedOperationException("Table would be too large (" + getTableBytes() + " bytes)");
+	}
+
+	@Override
+	public int getExportedTableSize() {
+		getOrBuildTable();
+		int digits = (1 << windowBits) - 1;
+		return 3 * 4 + 4 + p.toByteArray().length + 4 + base.toByteArray().length
+				+ numWindows * digits * mont.getNumLimbs() * 4;
+	}
+
+	@Override
+	public void exportTable(ByteBuffer out) {
+		int[][][] t = getOrBuildTable();
+		out.putInt(windowBits);
+		out.putInt(numWindows);
+		out.putInt(mont.getNumLimbs());
+		PrecomputedTables.putBytes(out, p.toByteArray());
+		PrecomputedTables.putBytes(out, base.toByteArray());
+		IntBuffer ints = out.asIntBuffer();
+		for (int[][] window : t) {
+			for (int[] entry : window)
+				ints.put(entry);
+		}
+		out.position(out.position() + 4 * ints.position());
+	}
+
+	@Override
+	public void importTable(ByteBuffer in) throws IOException {
+		checkUsesTable();
+		try {
+			int n = mont.getNumLimbs();
+			if (in.getInt() != windowBits || in.getInt() != numWindows || in.getInt() != n)
+				throw new IOException("Table parameters don't match");
+			if (!Arrays.equals(PrecomputedTables.getBytes(in), p.toByteArray())
+					|| !Arrays.equals(PrecomputedTables.getBytes(in), base.toByteArray()))
+				throw new IOException("Table is for a different modulus or base");
+
+			int digits = (1 << windowBits) - 1;
+			int[][][] t = new int[numWindows][digits][n];
+			IntBuffer ints = in.asIntBuffer();
+			for (int[][] window : t) {
+				for (int[] entry : window) {
+					ints.get(entry);
+					if (!mont.isReduced(entry))
+						throw new IOException("Table entry isn't reduced modulo p");
+				}
+			}
+			in.position(in.position() + 4 * ints.position());
+			if (!checkTable(t))
+				throw new IOException("Table doesn't match the base");
+			synchronized (this) {
+				table = t;
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Table is truncated");
+		}
+	}
+
+	/**
+	 * Check a table for the base: the product of a random power of the base (computed with the table) and
+	 * of all the table's entries is compared with {@link BigInteger#modPow(BigInteger, BigInteger)},
+	 * so a wrong entry anywhere in the table is detected.
+	 */
+	boolean checkTable(int[][][] t) {
+		BigInteger k = new BigInteger(order.bitLength(), new SecureRandom()).mod(order);
+		MontgomeryModulus.Accumulator result = multiply(t, k);
+
+		// Window i contributes base^(d*2^(windowBits*i)) for every digit d.
+		int digits = (1 << windowBits) - 1;
+		BigInteger digitSum = BigInteger.valueOf(digits * (digits + 1) / 2);
+		BigInteger total = k;
+		for (int i = 0; i < numWindows; ++i) {
+			total = total.add(digitSum.shiftLeft(windowBits * i));
+			for (int[] entry : t[i])
+				result.multiplyMontgomery(entry);
+		}
+		return result.get().equals(base.modPow(total, p));
+	}
+
+	/**
+	 * Multiply the table entries selected by the windows of k (which must be smaller than the order).
+	 */
+	MontgomeryModulus.Accumulator multiply(int[][][] t, BigInteger k) {
+		MontgomeryModulus.Accumulator result = mont.newAccumulator();
+		for (int i = 0, bit = 0; i < numWindows; ++i) {
+			int digit = 0;
+			for (int j = 0; j < windowBits; ++j, ++bit) {
+				if (k.testBit(bit))
+					digit |= 1 << j;
+			}
+			if (digit != 0)
+				result.multiplyMontgomery(t[i][digit - 1]);
+		}
+		return result;
+	}
+
+	@Override
+	public BigInteger multiply(BigInteger scalar) {
+		BigInteger k = scalar.mod(order);
+
+		int[][][] t = table;
+		if (t == null) {
+			t = getTable();
+			if (t == null)
+				return base.modPow(k, p);
+		}
+		return multiply(t, k).get();
+	}
+}
@@ -17,6 +17,10 @@ public class ZpPedersen extends PedersenCommitment<BigInteger> {
 		super(grp, h);
 	}
 
+	ZpPedersen(Zpschnorr grp, BigInteger h) {
+		super(grp, h);
+	}
+
 	/**
 	 * Generate a new private key.
 	 * To get the corresponding public key, create an instance of the SK class and use getPK().
@@ -29,5 +33,10 @@ public class ZpPedersen extends PedersenCommitment<BigInteger> {
 		return sk;
 	}
 
-
+	/**
+	 * Generate a new private key for a Schnorr group (see {@link #generateKey(Zpsafe, Random)}).
+	 */
+	public static BigInteger generateKey(Zpschnorr grp, Random rand) {
+		return IntegerUtils.getRandomInteger(grp.orderUpperBound(), rand);
+	}
 }
@@ -13,4 +13,8 @@ public class ZpTrapdoorPedersen extends TrapdoorPedersenCommitment<BigInteger> {
 	protected ZpTrapdoorPedersen(Zpsafe grp, BigInteger sk) {
 		super(grp, sk);
 	}
+
+	protected ZpTrapdoorPedersen(Zpschnorr grp, BigInteger sk) {
+		super(grp, sk);
+	}
 }
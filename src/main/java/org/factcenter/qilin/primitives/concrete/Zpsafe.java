@@ -1,10 +1,20 @@
 package org.factcenter.qilin.primitives.concrete;
 
+import org.factcenter.qilin.comm.SendableInput;
+import org.factcenter.qilin.comm.SendableOutput;
 import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
+import org.factcenter.qilin.primitives.generic.BlockCipherPRG;
 import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.PRGRandom;
+import org.factcenter.qilin.util.ParallelUtils;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 
 
@@ -27,20 +37,174 @@ public class Zpsafe extends Zpstar implements CyclicGroup<BigInteger> {
 	 */
 	BigInteger g;
 
+	/**
+	 * Multiplier for the generator (created on first use).
+	 */
+	transient FixedBaseMultiplier<BigInteger> generatorMultiplier;
+
+	/**
+	 * Bound for the primes used to sieve candidates in {@link #randomSafePrime(int, int, Random, ForkJoinPool)}.
+	 */
+	final static int SIEVE_BOUND = 1 << 14;
+
+	/**
+	 * The primes 5 <= s < {@link #SIEVE_BOUND}.
+	 */
+	final static int[] SIEVE_PRIMES;
+	static {
+		boolean[] composite = new boolean[SIEVE_BOUND];
+		int count = 0;
+		for (int i = 2; i < SIEVE_BOUND; ++i) {
+			if (composite[i])
+				continue;
+			if (i >= 5)
+				++count;
+			for (int j = i * i; j < SIEVE_BOUND; j += i)
+				composite[j] = true;
+		}
+		SIEVE_PRIMES = new int[count];
+		for (int i = 5, n = 0; i < SIEVE_BOUND; ++i) {
+			if (!composite[i])
+				SIEVE_PRIMES[n++] = i;
+		}
+	}
+
+	/**
+	 * Number of consecutive candidates for q tested before choosing a new random starting point.
+	 */
+	final static int SIEVE_RUN = 1 << 16;
+
+	/**
+	 * Searches for a safe prime p=2q+1 with a bits-bit q.
+	 * Candidates for q are consecutive integers congruent to 5 mod 6 (otherwise either q or 2q+1 is divisible
+	 * by 2 or 3), starting at a random point. The residues of q modulo the small primes are updated incrementally,
+	 * so a candidate for which q or 2q+1 has a small factor is discarded without any multiple-precision arithmetic;
+	 * primality tests are only run on the survivors, first on p (a single Fermat test, which discards most
+	 * candidates) and then on q.
+	 */
+	static class SafePrimeSearch implements ParallelUtils.Search<BigInteger> {
+		final int bits;
+		final int certainty;
+		final Random rand;
+
+		/**
+		 * Current candidate is q = start + 6 * step.
+		 */
+		BigInteger start;
+		int step;
+
+		/**
+		 * residues[i] = q mod SIEVE_PRIMES[i]
+		 */
+		final int[] residues = new int[SIEVE_PRIMES.length];
+
+		SafePrimeSearch(int bits, int certainty, Random rand) {
+			this.bits = bits;
+			this.certainty = certainty;
+			this.rand = rand;
+		}
+
+		void restart() {
+			BigInteger r = new BigInteger(bits, rand).setBit(bits - 1);
+			// r = 5 mod 6
+			start = r.subtract(r.mod(BigInteger.valueOf(6))).add(BigInteger.valueOf(5));
+			for (int i = 0; i < SIEVE_PRIMES.length; ++i)
+				residues[i] = start.mod(BigInteger.valueOf(SIEVE_PRIMES[i])).intValue();
+			step = 0;
+		}
+
+		/**
+		 * Advance to the next candidate. Return true if neither q nor 2q+1 have a small factor.
+		 */
+		boolean nextCandidate() {
+			boolean passed = true;
+			for (int i = 0; i < SIEVE_PRIMES.length; ++i) {
+				int sp = SIEVE_PRIMES[i];
+				int r = residues[i] + 6;
+				if (r >= sp)
+					r -= sp;
+				if (r >= sp)
+					r -= sp;
+				residues[i] = r;
+				// q = 0 or 2q+1 = 0 (mod sp)
+				if (r == 0 || r == (sp >> 1))
+					passed = false;
+			}
+			++step;
+			return passed;
+		}
+
+		/**
+		 * Test the sieve survivors among the next few candidates.
+		 */
+		@Override
+		public BigInteger attempt() {
+			if (start == null || step >= SIEVE_RUN)
+				restart();
+			// The sieve is fast; don't return to the caller (which checks for cancellation) for every candidate.
+			for (int i = 0; i < 64 && step < SIEVE_RUN; ++i) {
+				if (!nextCandidate())
+					continue;
+				BigInteger q = start.add(BigInteger.valueOf(6L * step));
+				if (q.bitLength() != bits) {
+					start = null;
+					return null;
+				}
+				BigInteger p = q.shiftLeft(1).setBit(0);
+				// Fermat test: 2^(p-1) = 1 (mod p) for a prime p
+				if (!BigInteger.valueOf(2).modPow(q.shiftLeft(1), p).equals(BigInteger.ONE))
+					continue;
+				if (q.isProbablePrime(certainty) && p.isProbablePrime(certainty))
+					return p;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Candidates are only sieved for large primes (so that the sieving primes are smaller than q).
+	 */
+	final static int MIN_SIEVE_BITS = 32;
+
 	/**
 	 * Return a random safe prime suitable for use with this class
-	 * @param bits
+	 * @param bits the bit length of q=(p-1)/2.
 	 */
 	public static BigInteger randomSafePrime(int bits, int certainty, Random rand) {
-		BigInteger q;
-		BigInteger p;
-		
-		do {
-			q = BigInteger.probablePrime(bits, rand);
-			// p = 2q+1
-			p = q.shiftLeft(1).setBit(0);
-		} while (!p.isProbablePrime(certainty));
-		return p;
+		return randomSafePrime(bits, certainty, rand, null);
+	}
+
+	/**
+	 * Return a random safe prime suitable for use with this class, searching in parallel on the pool.
+	 * Candidates for q and p=2q+1 are sieved jointly by the small primes, and one search runs on each of the pool's
+	 * workers (each with its own {@link PRGRandom}, seeded from rand); when one of them finds a safe prime the
+	 * others are stopped.
+	 * @param bits the bit length of q=(p-1)/2.
+	 * @param pool the pool to run on (if null, the search runs in the calling thread and uses rand directly).
+	 */
+	public static BigInteger randomSafePrime(int bits, int certainty, Random rand, ForkJoinPool pool) {
+		if (bits < MIN_SIEVE_BITS) {
+			BigInteger q;
+			BigInteger p;
+			do {
+				q = BigInteger.probablePrime(bits, rand);
+				// p = 2q+1
+				p = q.shiftLeft(1).setBit(0);
+			} while (!p.isProbablePrime(certainty));
+			return p;
+		}
+
+		List<SafePrimeSearch> searches = new ArrayList<SafePrimeSearch>();
+		if (pool == null) {
+			searches.add(new SafePrimeSearch(bits, certainty, rand));
+		} else {
+			for (int i = 0; i < pool.getParallelism(); ++i) {
+				byte[] seed = new byte[BlockCipherPRG.DEFAULT_KEYLEN];
+				rand.nextBytes(seed);
+				searches.add(new SafePrimeSearch(bits, certainty, new PRGRandom(seed)));
+			}
+		}
+		return ParallelUtils.findAny(pool, searches);
 	}
 
 	/** 
@@ -48,7 +212,18 @@ public class Zpsafe extends Zpstar implements CyclicGroup<BigInteger> {
 	 * @param p should be a safe prime (i.e., (p-1)/2 should also be prime).
 	 */
 	public Zpsafe(BigInteger p) {
-		super(p);
+		init(p);
+	}
+
+	/**
+	 * Construct an uninitialized group (its parameters must be read using {@link #readFrom(SendableInput)}).
+	 */
+	public Zpsafe() {
+	}
+
+	@Override
+	void init(BigInteger p) {
+		super.init(p);
 		// q=(p-1)/2
 		q = p.clearBit(0).shiftRight(1);
 
@@ -56,12 +231,43 @@ public class Zpsafe extends Zpstar implements CyclicGroup<BigInteger> {
 		// q, 2q or 2. Thus, 4=2^2 must have order 1 or q.
 		// Assuming q>2, 4 must have order q.
 		g = BigInteger.valueOf(4);
+		synchronized (this) {
+			generatorMultiplier = null;
+		}
+	}
+
+	/**
+	 * Read the modulus; it must be 3 mod 4 (as is every safe prime larger than 5), so that q is odd.
+	 */
+	@Override
+	public void readFrom(SendableInput in) throws IOException {
+		BigInteger p = in.readObject(BigInteger.class);
+		if (p.bitLength() < 4 || (p.intValue() & 3) != 3)
+			throw new IOException("Invalid safe prime: " + p);
+		init(p);
 	}
 	
 	@Override
 	public BigInteger sample(Random rand) {
 		BigInteger r = IntegerUtils.getRandomInteger(q, rand);
-		return g.modPow(r, p);
+		return getGeneratorMultiplier().multiply(r);
+	}
+
+	/**
+	 * Return a multiplier (i.e., exponentiator) for a fixed base, using a windowed table
+	 * (in Montgomery form) that is built after the first few exponentiations.
+	 */
+	@Override
+	public FixedBaseMultiplier<BigInteger> getFixedBaseMultiplier(BigInteger base) {
+		if (base.equals(g))
+			return getGeneratorMultiplier();
+		return new ZpFixedBaseMultiplier(this, base);
+	}
+
+	synchronized FixedBaseMultiplier<BigInteger> getGeneratorMultiplier() {
+		if (generatorMultiplier == null)
+			generatorMultiplier = new ZpFixedBaseMultiplier(this, g);
+		return generatorMultiplier;
 	}
 
 	/**
@@ -86,11 +292,15 @@ public class Zpsafe extends Zpstar implements CyclicGroup<BigInteger> {
 		return r;
 	}
 	
+	/**
+	 * Since q is prime, the order q subgroup is exactly the set of quadratic residues mod p,
+	 * so membership is checked using the Legendre symbol rather than by computing g^q
+	 * (this is more than 10 times faster for a 2048-bit p). The check is exact,
+	 * so {@link #containsAll(java.util.Collection)} simply checks every element.
+	 */
 	@Override
 	public boolean contains(BigInteger g) {
-		// Check that ord(g) | q. Since ord(g) is either 1, 2, q or 2q,
-		// this ensures ord(g)==q or ord(g)==1.
-		return super.contains(g) && (g.modPow(q, p).equals(BigInteger.ONE));
+		return super.contains(g) && IntegerUtils.jacobi(g, p) == 1;
 	}
 
 	@Override
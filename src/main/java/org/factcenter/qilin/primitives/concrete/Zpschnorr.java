@@ -0,0 +1,451 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.factcenter.qilin.comm.SendableInput;
+import org.factcenter.qilin.comm.SendableOutput;
+import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
+import org.factcenter.qilin.primitives.generic.BlockCipherPRG;
+import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.MontgomeryModulus;
+import org.factcenter.qilin.util.PRGRandom;
+import org.factcenter.qilin.util.ParallelUtils;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * The order q subgroup of the multiplicative group of integers mod p, where p=kq+1,
+ * both p and q are prime, and q is much shorter than p (a "Schnorr group").
+ * <p>
+ * Unlike {@link Zpsafe}, exponents are only as long as q (e.g., 256 bits for a 2048-bit p),
+ * so sampling, multiplication and membership tests are correspondingly cheaper.
+ * Since the subgroup is a negligible fraction of Z_p*, the group does not support injective
+ * encoding of messages.
+ * <p>
+ * Membership of many elements can be checked in a batch (see {@link #containsAll(Collection)}). The batch check
+ * is only efficient when the cofactor k has no small odd prime factors and k/2 is odd; the parameters returned by
+ * {@link #generate(int, int, int, Random)} always satisfy this.
+ *
+ * @author talm
+ *
+ */
+public class Zpschnorr extends Zpstar implements CyclicGroup<BigInteger> {
+	/**
+	 * Product of the odd primes below 1000 (used to quickly discard candidates for p).
+	 */
+	final static BigInteger SMALL_PRIMES_PRODUCT;
+	static {
+		BigInteger prod = BigInteger.ONE;
+		for (int i = 3; i < 1000; i += 2) {
+			if (BigInteger.valueOf(i).isProbablePrime(20))
+				prod = prod.multiply(BigInteger.valueOf(i));
+		}
+		SMALL_PRIMES_PRODUCT = prod;
+	}
+
+	/**
+	 * The first prime that is not a factor of {@link #SMALL_PRIMES_PRODUCT}.
+	 */
+	final static int SMALL_PRIMES_BOUND = 1009;
+
+	/**
+	 * A batch of elements that contains a non-member passes {@link #containsAll(Collection)}
+	 * with probability at most 2^(-BATCH_SECURITY_BITS).
+	 */
+	public final static int BATCH_SECURITY_BITS = 64;
+
+	/**
+	 * Minimum number of elements for which {@link #containsAll(Collection)} uses a batch check.
+	 */
+	public final static int BATCH_THRESHOLD = 64;
+
+	/**
+	 * Order of the group
+	 */
+	BigInteger q;
+
+	/**
+	 * The cofactor k=(p-1)/q.
+	 */
+	BigInteger k;
+
+	/**
+	 *  Generator for the group.
+	 */
+	BigInteger g;
+
+	/**
+	 * Multiplier for the generator (created on first use).
+	 */
+	transient FixedBaseMultiplier<BigInteger> generatorMultiplier;
+
+	/**
+	 * Maximum exponent length (in bits) for a round of the batch membership check, such that
+	 * every prime factor of the odd part of k is larger than 2^batchExponentBits
+	 * (0 if the batch check can't be used because 4 | k).
+	 */
+	int batchExponentBits;
+
+	/**
+	 * Generate random parameters for a Schnorr group: a qBits-bit prime q and a pBits-bit prime p such that q | p-1.
+	 * The modulus has the form p=2qm+1, where m is odd and has no prime factors smaller than 1000
+	 * (so that membership can be checked in batches).
+	 * @param pBits bit length of the modulus
+	 * @param qBits bit length of the group order (must be smaller than pBits)
+	 * @param certainty primality certainty (see {@link BigInteger#isProbablePrime(int)})
+	 */
+	public static Zpschnorr generate(int pBits, int qBits, int certainty, Random rand) {
+		return generate(pBits, qBits, certainty, rand, null);
+	}
+
+	/**
+	 * Generate random parameters as in {@link #generate(int, int, int, Random)}, searching for p in parallel
+	 * on the pool (one search per worker, each with its own {@link PRGRandom} seeded from rand).
+	 * @param pool the pool to run on (if null, the search runs in the calling thread and uses rand directly).
+	 */
+	public static Zpschnorr generate(int pBits, int qBits, int certainty, Random rand, ForkJoinPool pool) {
+		if (qBits >= pBits)
+			throw new IllegalArgumentException("Group order (" + qBits + " bits) must be shorter than the modulus ("
+					+ pBits + " bits)");
+		BigInteger q = BigInteger.probablePrime(qBits, rand);
+		List<ModulusSearch> searches = new ArrayList<ModulusSearch>();
+		if (pool == null) {
+			searches.add(new ModulusSearch(q, pBits, certainty, rand));
+		} else {
+			for (int i = 0; i < pool.getParallelism(); ++i) {
+				byte[] seed = new byte[BlockCipherPRG.DEFAULT_KEYLEN];
+				rand.nextBytes(seed);
+				searches.add(new ModulusSearch(q, pBits, certainty, new PRGRandom(seed)));
+			}
+		}
+		return new Zpschnorr(ParallelUtils.findAny(pool, searches), q);
+	}
+
+	/**
+	 * Searches for a prime p=2qm+1 (see {@link #generate(int, int, int, Random)}).
+	 */
+	static class ModulusSearch implements ParallelUtils.Search<BigInteger> {
+		final BigInteger twoQ;
+		final int pBits;
+		final int mBits;
+		final int certainty;
+		final Random rand;
+
+		ModulusSearch(BigInteger q, int pBits, int certainty, Random rand) {
+			this.twoQ = q.shiftLeft(1);
+			this.pBits = pBits;
+			this.mBits = pBits - twoQ.bitLength() + 1;
+			this.certainty = certainty;
+			this.rand = rand;
+		}
+
+		@Override
+		public BigInteger attempt() {
+			// Choose a random odd m with no small factors, so that p=2qm+1 has (close to) pBits bits
+			BigInteger m = new BigInteger(mBits, rand).setBit(mBits - 1).setBit(0);
+			if (mBits > 10 && !m.gcd(SMALL_PRIMES_PRODUCT).equals(BigInteger.ONE))
+				return null;
+			BigInteger p = twoQ.multiply(m).add(BigInteger.ONE);
+			if (p.bitLength() != pBits)
+				return null;
+			// Trial division is much cheaper than a primality test, and discards most candidates.
+			if (p.bitLength() > 10 && !p.gcd(SMALL_PRIMES_PRODUCT).equals(BigInteger.ONE))
+				return null;
+			return p.isProbablePrime(certainty) ? p : null;
+		}
+	}
+
+	/**
+	 * Constructor. The generator is chosen deterministically: it is h^k for the smallest integer h>1 for which
+	 * this is not 1.
+	 * @param p the modulus (must be a prime)
+	 * @param q the group order (must be a prime dividing p-1)
+	 */
+	public Zpschnorr(BigInteger p, BigInteger q) {
+		this(p, q, null);
+	}
+
+	/**
+	 * Constructor.
+	 * @param p the modulus (must be a prime)
+	 * @param q the group order (must be a prime dividing p-1)
+	 * @param g a generator of the order q subgroup (if null, one is chosen as in {@link #Zpschnorr(BigInteger, BigInteger)})
+	 */
+	public Zpschnorr(BigInteger p, BigInteger q, BigInteger g) {
+		init(p, q, g);
+	}
+
+	/**
+	 * Construct an uninitialized group (its parameters must be read using {@link #readFrom(SendableInput)}).
+	 */
+	public Zpschnorr() {
+	}
+
+	void init(BigInteger p, BigInteger q, BigInteger g) {
+		super.init(p);
+		this.q = q;
+		BigInteger[] qr = p.subtract(BigInteger.ONE).divideAndRemainder(q);
+		if (qr[1].signum() != 0)
+			throw new IllegalArgumentException("q must divide p-1");
+		k = qr[0];
+		batchExponentBits = computeBatchExponentBits(k);
+
+		if (g == null) {
+			for (BigInteger h = BigInteger.valueOf(2); ; h = h.add(BigInteger.ONE)) {
+				g = h.modPow(k, p);
+				if (!g.equals(BigInteger.ONE))
+					break;
+			}
+		}
+		this.g = g;
+		synchronized (this) {
+			generatorMultiplier = null;
+		}
+	}
+
+	/**
+	 * Write the group parameters (p, q and the generator).
+	 */
+	@Override
+	public void writeTo(SendableOutput out) throws IOException {
+		super.writeTo(out);
+		out.writeObject(q);
+		out.writeObject(g);
+	}
+
+	/**
+	 * Read parameters written by {@link #writeTo(SendableOutput)}. Checks that q divides p-1 and that
+	 * the generator has order q (but not that p and q are prime).
+	 */
+	@Override
+	public void readFrom(SendableInput in) throws IOException {
+		BigInteger p = in.readObject(BigInteger.class);
+		BigInteger q = in.readObject(BigInteger.class);
+		BigInteger g = in.readObject(BigInteger.class);
+		if (p.signum() <= 0 || q.compareTo(BigInteger.ONE) <= 0 || g.signum() <= 0 || g.compareTo(p) >= 0
+				|| g.equals(BigInteger.ONE) || !g.modPow(q, p).equals(BigInteger.ONE))
+			throw new IOException("Invalid Schnorr group parameters");
+		try {
+			init(p, q, g);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Return the number of bits of batch exponents, such that no odd prime factor of k is smaller than
+	 * 2^bits. The batch check also needs k/2 to be odd (otherwise this returns 0).
+	 */
+	static int computeBatchExponentBits(BigInteger k) {
+		if (k.getLowestSetBit() != 1)
+			return 0;
+		BigInteger odd = k.shiftRight(1);
+		int bound = SMALL_PRIMES_BOUND;
+		BigInteger common = odd.gcd(SMALL_PRIMES_PRODUCT);
+		if (!common.equals(BigInteger.ONE)) {
+			for (int s = 3; s < SMALL_PRIMES_BOUND; s += 2) {
+				if (common.mod(BigInteger.valueOf(s)).signum() == 0) {
+					bound = s;
+					break;
+				}
+			}
+		}
+		// floor(log2(bound))
+		return 31 - Integer.numberOfLeadingZeros(bound);
+	}
+
+	/**
+	 * @return the cofactor (p-1)/q
+	 */
+	public BigInteger getCofactor() {
+		return k;
+	}
+
+	@Override
+	public BigInteger sample(Random rand) {
+		BigInteger r = IntegerUtils.getRandomInteger(q, rand);
+		return getGeneratorMultiplier().multiply(r);
+	}
+
+	/**
+	 * Group "multiply" operation is modular exponentiation. Since every element has order q,
+	 * the exponent is first reduced modulo q.
+	 */
+	@Override
+	public BigInteger multiply(BigInteger g, BigInteger integer) {
+		return g.modPow(integer.mod(q), p);
+	}
+
+	/**
+	 * Return a multiplier (i.e., exponentiator) for a fixed base, using a windowed table
+	 * (in Montgomery form) that is built after the first few exponentiations.
+	 */
+	@Override
+	public FixedBaseMultiplier<BigInteger> getFixedBaseMultiplier(BigInteger base) {
+		if (base.equals(g))
+			return getGeneratorMultiplier();
+		return new ZpFixedBaseMultiplier(this, base);
+	}
+
+	synchronized FixedBaseMultiplier<BigInteger> getGeneratorMultiplier() {
+		if (generatorMultiplier == null)
+			generatorMultiplier = new ZpFixedBaseMultiplier(this, g);
+		return generatorMultiplier;
+	}
+
+	/**
+	 * Get a random member of the group whose discrete log
+	 * with respect to g is not known.
+	 * @param rand
+	 * @return a random element in the order q subgroup of Z_p*
+	 */
+	public BigInteger randomWithSecretDLOG(Random rand) {
+		BigInteger r;
+		do {
+			// r^k is a random element of the order q subgroup (since the map x -> x^k
+			// from Z_p* to the subgroup is k to 1).
+			r = IntegerUtils.getRandomInteger(p.subtract(BigInteger.ONE), rand).add(BigInteger.ONE);
+			r = r.modPow(k, p);
+		} while (r.equals(BigInteger.ONE));
+		return r;
+	}
+
+	/**
+	 * Check that the element is in the subgroup. Since q is prime, this is true iff g^q=1;
+	 * the exponent is only as long as q, rather than p.
+	 */
+	@Override
+	public boolean contains(BigInteger g) {
+		return super.contains(g) && (g.modPow(q, p).equals(BigInteger.ONE));
+	}
+
+	/**
+	 * Check membership of many elements using a randomized batch test (a variant of the
+	 * "small exponents" test of Bellare, Garay and Rabin).
+	 * <p>
+	 * First, every element is checked to be a quadratic residue, using the Legendre symbol (this is much cheaper
+	 * than an exponentiation). This rules out components of order 2 outside the subgroup, since k/2 is odd. Then, in each
+	 * round, we choose random b-bit exponents e<sub>i</sub> and check that (&prod; x<sub>i</sub><sup>e<sub>i</sub></sup>)<sup>q</sup>=1.
+	 * The product is computed in Montgomery form with the bucket method: about one multiplication per element
+	 * per round. If some x<sub>i</sub> has a component of order r outside the subgroup, where every prime factor of
+	 * r is larger than 2<sup>b</sup>, a round passes with probability at most 2<sup>-b</sup>;
+	 * we choose b so that this holds for every prime factor of k/2, and run enough rounds for an error of
+	 * 2^(-{@link #BATCH_SECURITY_BITS}).
+	 * <p>
+	 * For small batches, or if 4 divides k, every element is checked with {@link #contains(BigInteger)}.
+	 */
+	@Override
+	public boolean containsAll(Collection<BigInteger> elements) {
+		int n = elements.size();
+		if (n < BATCH_THRESHOLD || batchExponentBits == 0 || mont == null)
+			return super.containsAll(elements);
+
+		int[][] xs = new int[n][];
+		int i = 0;
+		for (BigInteger x : elements) {
+			if (!super.contains(x) || IntegerUtils.jacobi(x, p) != 1)
+				return false;
+			xs[i++] = mont.toMontgomery(x);
+		}
+
+		// Use at most about n buckets per round (otherwise summing the buckets costs more than filling them).
+		int bits = Math.min(batchExponentBits, Math.max(1, 31 - Integer.numberOfLeadingZeros(n)));
+		int rounds = (BATCH_SECURITY_BITS + bits - 1) / bits;
+		Random rand = new PRGRandom();
+		int[] scratch = mont.newScratch();
+		for (int round = 0; round < rounds; ++round) {
+			if (!batchRound(xs, bits, rand, scratch))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Run one round of the batch membership test.
+	 */
+	boolean batchRound(int[][] xs, int bits, Random rand, int[] scratch) {
+		int numBuckets = (1 << bits) - 1;
+		int[][] buckets = new int[numBuckets][];
+		for (int[] x : xs) {
+			int e = rand.nextInt(1 << bits);
+			if (e == 0)
+				continue;
+			if (buckets[e - 1] == null)
+				buckets[e - 1] = x.clone();
+			else
+				mont.multiply(buckets[e - 1], x, buckets[e - 1], scratch);
+		}
+
+		// prod_d bucket[d]^d = prod_j (bucket[j] * ... * bucket[top])
+		int[] running = null;
+		int[] sum = null;
+		for (int d = numBuckets - 1; d >= 0; --d) {
+			if (buckets[d] != null) {
+				if (running == null)
+					running = buckets[d];
+				else
+					mont.multiply(running, buckets[d], running, scratch);
+			}
+			if (running != null) {
+				if (sum == null)
+					sum = running.clone();
+				else
+					mont.multiply(sum, running, sum, scratch);
+			}
+		}
+		if (sum == null)
+			return true;
+		return mont.fromMontgomery(sum).modPow(q, p).equals(BigInteger.ONE);
+	}
+
+	@Override
+	public BigInteger orderUpperBound() {
+		return q;
+	}
+
+	/**
+	 * Map the input to Z_p* (see {@link Zpstar#denseDecode(byte[])}) and then into the subgroup
+	 * by raising it to the power k. The map is k to 1, so a (close to) uniform element of Z_p* is mapped to
+	 * a (close to) uniform element of the subgroup.
+	 */
+	@Override
+	public BigInteger denseDecode(byte[] input) {
+		BigInteger r = super.denseDecode(input);
+		if (r.signum() == 0)
+			return BigInteger.ONE;
+		return r.modPow(k, p);
+	}
+
+	/**
+	 * The subgroup is too sparse to encode messages injectively, so this always throws
+	 * {@link UnsupportedOperationException}.
+	 */
+	@Override
+	public BigInteger injectiveEncode(byte[] msg, Random rand) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException("Schnorr groups do not support injective encoding");
+	}
+
+	@Override
+	public byte[] injectiveDecode(BigInteger encodedMsg) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException("Schnorr groups do not support injective encoding");
+	}
+
+	/**
+	 * @return 0 (no message can be encoded; see {@link #injectiveEncode(byte[], Random)}).
+	 */
+	@Override
+	public int getInjectiveEncodeMsgLength() {
+		return 0;
+	}
+
+	@Override
+	public BigInteger getGenerator() {
+		return g;
+	}
+}
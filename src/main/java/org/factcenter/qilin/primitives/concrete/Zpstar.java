@@ -1,24 +1,39 @@
 package org.factcenter.qilin.primitives.concrete;
 
+import org.factcenter.qilin.comm.Sendable;
 import org.factcenter.qilin.comm.SendableInput;
 import org.factcenter.qilin.comm.SendableOutput;
 import org.factcenter.qilin.primitives.Group;
+import org.factcenter.qilin.primitives.generic.MultiExp;
 import org.factcenter.qilin.util.ByteEncoder;
 import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.MontgomeryModulus;
 import org.factcenter.qilin.util.StreamEncoder;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 
 
 /**
  * Multiplicative group of integers mod p (p must be a prime) 
+ * <p>
+ * The group parameters can be saved and restored (or sent to another party) as a {@link Sendable};
+ * the parameters are not tested for primality when they are read.
  * @author talm
  *
  */
-public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, ByteEncoder<BigInteger> {
+public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, ByteEncoder<BigInteger>, Sendable {
 	BigInteger p;
+
+	/**
+	 * Montgomery arithmetic modulo p (null if p is even).
+	 */
+	transient MontgomeryModulus mont;
 	
 	/**
 	 * Construct the multiplicative group of integers mod p.
@@ -26,7 +41,45 @@ public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, Byt
 	 * @param p must be a prime (this is not verified by the code)
 	 */
 	public Zpstar(BigInteger p) {
+		init(p);
+	}
+
+	/**
+	 * Construct an uninitialized group (its parameters must be read using {@link #readFrom(SendableInput)}).
+	 */
+	public Zpstar() {
+	}
+
+	/**
+	 * @return the modulus p.
+	 */
+	public BigInteger getModulus() {
+		return p;
+	}
+
+	void init(BigInteger p) {
 		this.p = p;
+		mont = p.testBit(0) ? new MontgomeryModulus(p) : null;
+	}
+
+	/**
+	 * Write the group parameters.
+	 */
+	@Override
+	public void writeTo(SendableOutput out) throws IOException {
+		out.writeObject(p);
+	}
+
+	/**
+	 * Read group parameters written by {@link #writeTo(SendableOutput)}.
+	 * Only cheap consistency checks are performed (an IOException is thrown if they fail).
+	 */
+	@Override
+	public void readFrom(SendableInput in) throws IOException {
+		BigInteger p = in.readObject(BigInteger.class);
+		if (p.compareTo(BigInteger.valueOf(2)) < 0)
+			throw new IOException("Invalid modulus: " + p);
+		init(p);
 	}
 
 	/**
@@ -37,6 +90,24 @@ public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, Byt
 		return el.multiply(el2).mod(p);
 	}
 
+	/**
+	 * The product is accumulated in Montgomery form (see {@link MontgomeryModulus.Accumulator}), so each
+	 * element costs a single Montgomery multiplication instead of a multiplication and a full division.
+	 */
+	@Override
+	public BigInteger sum(Iterable<BigInteger> elements) {
+		if (mont == null) {
+			BigInteger acc = zero();
+			for (BigInteger x : elements)
+				acc = add(acc, x);
+			return acc;
+		}
+		MontgomeryModulus.Accumulator acc = mont.newAccumulator();
+		for (BigInteger x : elements)
+			acc.multiply(x);
+		return acc.get();
+	}
+
 	/**
 	 * Group "multiply" operation is modular exponentiation 
 	 */
@@ -45,11 +116,60 @@ public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, Byt
 		return g.modPow(integer, p);
 	}
 
+	/**
+	 * Product of the bases raised to the scalars.
+	 * Each power is computed with {@link BigInteger#modPow(BigInteger, BigInteger)}, whose (intrinsic) Montgomery
+	 * multiplication is faster than sharing squarings between the bases in Java code (as {@link MultiExp} does);
+	 * the powers are multiplied together in Montgomery form.
+	 */
+	@Override
+	public BigInteger multiExp(List<BigInteger> bases, List<BigInteger> scalars) {
+		if (mont == null)
+			return MultiExp.multiExp(this, bases, scalars);
+		if (bases.size() != scalars.size())
+			throw new IllegalArgumentException("Number of bases (" + bases.size()
+					+ ") and scalars (" + scalars.size() + ") must be equal");
+		BigInteger order = orderUpperBound();
+		MontgomeryModulus.Accumulator acc = mont.newAccumulator();
+		for (int i = 0; i < bases.size(); ++i)
+			acc.multiply(bases.get(i).modPow(scalars.get(i).mod(order), p));
+		return acc.get();
+	}
+
 	@Override
 	public BigInteger negate(BigInteger g) {
 		return g.modInverse(p);
 	}
 
+	/**
+	 * Inverts all the elements with a single modular inversion (Montgomery's trick),
+	 * at the cost of three modular multiplications per element.
+	 * @throws ArithmeticException if some element is not invertible mod p.
+	 */
+	@Override
+	public List<BigInteger> negateAll(List<BigInteger> elements) {
+		BigInteger[] xs = elements.toArray(new BigInteger[elements.size()]);
+		int n = xs.length;
+		if (n == 0)
+			return new ArrayList<BigInteger>();
+		// prefix[i] = xs[0] * ... * xs[i]
+		BigInteger[] prefix = new BigInteger[n];
+		BigInteger acc = xs[0].mod(p);
+		prefix[0] = acc;
+		for (int i = 1; i < n; ++i) {
+			acc = acc.multiply(xs[i]).mod(p);
+			prefix[i] = acc;
+		}
+		BigInteger inv = acc.modInverse(p);
+		BigInteger[] result = new BigInteger[n];
+		for (int i = n - 1; i > 0; --i) {
+			result[i] = inv.multiply(prefix[i - 1]).mod(p);
+			inv = inv.multiply(xs[i]).mod(p);
+		}
+		result[0] = inv;
+		return Arrays.asList(result);
+	}
+
 	@Override
 	public BigInteger sample(Random rand) {
 		// Return a random integer between 1 and p-1.
@@ -63,9 +183,11 @@ public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, Byt
 
 	@Override
 	public BigInteger injectiveEncode(byte[] msg, Random rand) throws UnsupportedOperationException {
-		if (msg.length > getInjectiveEncodeMsgLength()) {
+		if (msg.length != getInjectiveEncodeMsgLength()) {
+            // Truncate or zero-pad at the end (padding must be explicit, since leading zeros
+            // in a short message would otherwise be lost)
             byte[] tmp = new byte[getInjectiveEncodeMsgLength()];
-            System.arraycopy(msg, 0, tmp, 0, tmp.length);
+            System.arraycopy(msg, 0, tmp, 0, Math.min(msg.length, tmp.length));
             msg = tmp;
         }
 
@@ -79,9 +201,11 @@ public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, Byt
         int off = 0;
 
 		if (decode.length != getInjectiveEncodeMsgLength()) {
+            // Drop the sign byte, or restore leading zero bytes.
             byte[] tmp = new byte[getInjectiveEncodeMsgLength()];
             int offs = (decode[0] == 0) ? 1 : 0;
-            System.arraycopy(decode, offs, tmp, 0, Math.min(decode.length - offs, tmp.length));
+            int len = Math.min(decode.length - offs, tmp.length);
+            System.arraycopy(decode, offs, tmp, tmp.length - len, len);
             decode = tmp;
 		}
 		return decode;
@@ -97,6 +221,15 @@ public class Zpstar implements Group<BigInteger>, StreamEncoder<BigInteger>, Byt
 		return (g.signum() > 0) && (g.compareTo(p) < 0);
 	}
 
+	@Override
+	public boolean containsAll(Collection<BigInteger> elements) {
+		for (BigInteger x : elements) {
+			if (!contains(x))
+				return false;
+		}
+		return true;
+	}
+
 	@Override
 	public BigInteger zero() {
 		return BigInteger.ONE;
@@ -1,6 +1,8 @@
 package org.factcenter.qilin.primitives.generic;
 
 import org.factcenter.qilin.primitives.PseudorandomGenerator;
+import org.factcenter.qilin.util.BitMatrix;
+import org.factcenter.qilin.util.ParallelUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,6 +11,7 @@ import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * An implementation of the PRG from a block cipher
@@ -33,6 +36,16 @@ public class BlockCipherPRG implements PseudorandomGenerator {
      */
     Cipher cipher;
 
+    /**
+     * The full cipher name (used to create additional cipher instances in {@link #expandRows}).
+     */
+    String cipherName;
+
+    /**
+     * The pool used to expand rows in parallel (if null, rows are expanded sequentially).
+     */
+    ForkJoinPool pool = ParallelUtils.getDefaultPool();
+
     /**
      * The algorithm portion of the cipher name (in format compatible with {@link SecretKeySpec}).
      */
@@ -53,10 +66,33 @@ public class BlockCipherPRG implements PseudorandomGenerator {
     ByteBuffer ctrBuffer;
     ByteBuffer currentBytes;
 
+    /**
+     * Maximum number of bytes encrypted by a single cipher call in bulk mode.
+     */
+    final static int BULK_BYTES = 1 << 14;
+
+    /**
+     * True if the cipher is in ECB mode without padding, so that consecutive counter
+     * blocks can be encrypted with a single call.
+     */
+    boolean bulkMode;
+
+    /**
+     * Buffer of consecutive counter values for bulk mode (allocated on first use).
+     */
+    byte[] bulkCtr;
+
     /**
      * Increment the counter.
      */
     private void incCounter() {
+        incCounter(ctr);
+    }
+
+    /**
+     * Increment a counter (stored least-significant byte first).
+     */
+    static void incCounter(byte[] ctr) {
         for (int i = 0; i < ctr.length; ++i) {
             if (++ctr[i] != 0) {
                 break;
@@ -69,6 +105,8 @@ public class BlockCipherPRG implements PseudorandomGenerator {
     {
         String[] nameParts = cipherName.split("/", 2);
         cipherAlg = nameParts[0];
+        this.cipherName = cipherName;
+        bulkMode = cipherName.toUpperCase().endsWith("/ECB/NOPADDING");
         cipher = Cipher.getInstance(cipherName);
         this.keyLen = keyLen;
         keySet = false;
@@ -151,6 +189,35 @@ public class BlockCipherPRG implements PseudorandomGenerator {
             }
         }
 
+        // Use up the bytes left over from the previous call.
+        if (currentBytes.hasRemaining()) {
+            int readLen = Math.min(outlen, currentBytes.remaining());
+            currentBytes.get(outBytes, outOffset, readLen);
+            outOffset += readLen;
+            outlen -= readLen;
+        }
+
+        if (bulkMode && outlen >= ctr.length) {
+            // Encrypt as many whole blocks as we can directly into the output,
+            // a buffer of consecutive counter values at a time.
+            if (bulkCtr == null)
+                bulkCtr = new byte[Math.max(1, BULK_BYTES / ctr.length) * ctr.length];
+            while (outlen >= ctr.length) {
+                int len = Math.min(bulkCtr.length, outlen - outlen % ctr.length);
+                for (int pos = 0; pos < len; pos += ctr.length) {
+                    System.arraycopy(ctr, 0, bulkCtr, pos, ctr.length);
+                    incCounter();
+                }
+                try {
+                    cipher.doFinal(bulkCtr, 0, len, outBytes, outOffset);
+                } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+                    logger.error("Cipher " + cipher.getAlgorithm() + " doesn't match its stated sizes!", e);
+                }
+                outOffset += len;
+                outlen -= len;
+            }
+        }
+
         while (outlen > 0) {
             if (!currentBytes.hasRemaining()) {
                 currentBytes.clear();
@@ -166,10 +233,96 @@ public class BlockCipherPRG implements PseudorandomGenerator {
             int readLen = Math.min(outlen, currentBytes.remaining());
 
             currentBytes.get(outBytes, outOffset, readLen);
+            outOffset += readLen;
             outlen -= readLen;
         }
     }
 
+    /**
+     * Set the pool used by {@link #expandRows}.
+     * @param pool the pool; if null, rows are expanded sequentially in the calling thread.
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Minimum number of output bytes handled by a single parallel task in {@link #expandRows}.
+     */
+    final static int EXPAND_GRAIN_BYTES = 1 << 14;
+
+    @Override
+    public void expandRows(final BitMatrix seeds, final int seedRow, final BitMatrix out, final int outRow, int numRows) {
+        if (seedRow + numRows > seeds.getNumRows() || outRow + numRows > out.getNumRows())
+            throw new RuntimeException("Invalid row range (seedRow=" + seedRow + ",outRow=" + outRow + ",numRows=" + numRows + ")");
+
+        out.internalCopy();
+        final byte[] seedBits = seeds.getBackingArray();
+        final int seedLen = Math.min(keyLen, seeds.getUsedBytesPerRow());
+        final byte[] outBits = out.getBackingArray();
+        final int outLen = out.getUsedBytesPerRow();
+        final int partialBits = out.getNumCols() % 8;
+
+        int grain = EXPAND_GRAIN_BYTES / Math.max(1, outLen);
+        ParallelUtils.forRange(pool, 0, numRows, grain, new ParallelUtils.RangeBody() {
+            @Override
+            public void run(int from, int to) {
+                // Each task uses its own cipher instance and buffers. The JCE cipher is used even for AES,
+                // since BouncyCastle's fast engine uses key- and data-dependent table lookups (and the keys
+                // here are secret seeds), while the JCE implementation can use the AES instructions.
+                byte[] key = new byte[keyLen];
+                byte[] block = new byte[ctr.length];
+                Cipher rowCipher;
+                try {
+                    rowCipher = Cipher.getInstance(cipherName);
+                } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+                    throw new RuntimeException("Should never happen! Cipher " + cipherName + " was already created!", e);
+                }
+
+                // Every row encrypts the same counter values, so they are computed once.
+                int fullLen = outLen - outLen % block.length;
+                byte[] rowCtrs = new byte[fullLen + block.length];
+                byte[] rowCtr = new byte[ctr.length];
+                for (int pos = 0; pos < rowCtrs.length; pos += rowCtr.length) {
+                    System.arraycopy(rowCtr, 0, rowCtrs, pos, rowCtr.length);
+                    incCounter(rowCtr);
+                }
+
+                for (int i = from; i < to; ++i) {
+                    System.arraycopy(seedBits, seeds.getRowIndex(seedRow + i), key, 0, seedLen);
+                    int start = out.getRowIndex(outRow + i);
+                    int end = start + outLen;
+                    int pos = start;
+
+                    try {
+                        rowCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, cipherAlg));
+                        if (bulkMode) {
+                            // All the whole blocks of the row in a single call
+                            if (fullLen > 0)
+                                rowCipher.doFinal(rowCtrs, 0, fullLen, outBits, pos);
+                            pos += fullLen;
+                        }
+                        for (; pos < end; pos += block.length) {
+                            if (end - pos >= block.length) {
+                                rowCipher.doFinal(rowCtrs, pos - start, block.length, outBits, pos);
+                            } else {
+                                rowCipher.doFinal(rowCtrs, pos - start, block.length, block, 0);
+                                System.arraycopy(block, 0, outBits, pos, end - pos);
+                            }
+                        }
+                    } catch (InvalidKeyException e) {
+                        throw new RuntimeException("Unexpected error setting key", e);
+                    } catch (ShortBufferException | IllegalBlockSizeException | BadPaddingException e) {
+                        throw new RuntimeException("Cipher " + cipherName + " doesn't match its stated sizes!", e);
+                    }
+
+                    if (partialBits != 0)
+                        outBits[end - 1] &= (1 << partialBits) - 1;
+                }
+            }
+        });
+    }
+
     @Override
     public void reset() {
         for (int i = 0; i < ctr.length; ++i)
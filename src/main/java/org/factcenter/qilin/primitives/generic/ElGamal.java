@@ -1,13 +1,21 @@
 package org.factcenter.qilin.primitives.generic;
 
 import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
+import org.factcenter.qilin.primitives.PrecomputedMultiplier;
+import org.factcenter.qilin.util.GenericsUtils;
 import org.factcenter.qilin.util.Pair;
 import org.factcenter.qilin.primitives.Cipher;
 import org.factcenter.qilin.primitives.Homomorphic;
 import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.ParallelUtils;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -47,16 +55,194 @@ public class ElGamal {
 		 */
 		transient G g;
 
+		/**
+		 * Fixed-base multipliers for the generator and the public key.
+		 */
+		transient FixedBaseMultiplier<G> gMultiplier;
+		transient FixedBaseMultiplier<G> pkMultiplier;
+
+		/**
+		 * Number of elements processed by each parallel task in the batch operations.
+		 */
+		public final static int BATCH_GRAIN = 64;
+
+		/**
+		 * Number of ciphertexts summed by each parallel task in {@link #sumParallel(List, ForkJoinPool)}
+		 * (additions are much cheaper than exponentiations, so the chunks are larger than {@link #BATCH_GRAIN}).
+		 */
+		public final static int SUM_GRAIN = 4096;
+
+		/**
+		 * The pool on which batch operations run (if null, they run in the calling thread).
+		 */
+		transient ForkJoinPool pool = ParallelUtils.getDefaultPool();
+
 		public PK(CyclicGroup<G> grp, G pk) {
 			this.grp = grp;
 			this.g = grp.getGenerator();
 			this.pk = pk;
+			this.gMultiplier = grp.getFixedBaseMultiplier(g);
+			this.pkMultiplier = grp.getFixedBaseMultiplier(pk);
 		}
 
 		@Override
 		public Pair<G, G> encrypt(G plaintext, BigInteger randomness) {
-			G gr = grp.multiply(g, randomness);
-			return new Pair<G,G>(gr, grp.add(grp.multiply(pk, randomness), plaintext));
+			G gr = gMultiplier.multiply(randomness);
+			return new Pair<G,G>(gr, grp.add(pkMultiplier.multiply(randomness), plaintext));
+		}
+
+		/**
+		 * Set the pool used by the batch operations (e.g., {@link #encryptAll(List, Random)}).
+		 * By default, the shared {@link ParallelUtils#getDefaultPool()} is used.
+		 * @param pool the pool to use, or null to run batch operations in the calling thread.
+		 */
+		public void setForkJoinPool(ForkJoinPool pool) {
+			this.pool = pool;
+		}
+
+		/**
+		 * Encrypt a batch of plaintexts, each with fresh randomness.
+		 * The randomness is sampled up front from rand (so the result depends only on rand's state, not on
+		 * the scheduling), and the encryptions are split between the workers of the pool.
+		 * @return the ciphertexts, in the order of the plaintexts.
+		 */
+		public List<Pair<G, G>> encryptAll(List<G> plaintexts, Random rand) {
+			return encryptAll(plaintexts, getRandomAll(plaintexts.size(), rand));
+		}
+
+		/**
+		 * Encrypt a batch of plaintexts with the given randomness (randomness[i] is used for the i'th plaintext).
+		 * @return the ciphertexts, in the order of the plaintexts.
+		 */
+		public List<Pair<G, G>> encryptAll(final List<G> plaintexts, final BigInteger[] randomness) {
+			if (randomness.length != plaintexts.size())
+				throw new IllegalArgumentException("Number of random values doesn't match the number of plaintexts");
+			precomputeMultipliers();
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final Pair<G, G>[] ciphers = new Pair[randomness.length];
+			ParallelUtils.forRange(pool, 0, ciphers.length, BATCH_GRAIN, new ParallelUtils.RangeBody() {
+				@Override
+				public void run(int from, int to) {
+					for (int i = from; i < to; ++i)
+						ciphers[i] = encrypt(plaintexts.get(i), randomness[i]);
+					normalizeAll(ciphers, from, to);
+				}
+			});
+			return Arrays.asList(ciphers);
+		}
+
+		/**
+		 * Re-randomize a ciphertext: the result encrypts the same plaintext as cipher, and equals
+		 * add(cipher, encrypt(zero, randomness)), but without computing the encryption of zero as a separate pair.
+		 */
+		public Pair<G, G> rerandomize(Pair<G, G> cipher, BigInteger randomness) {
+			return new Pair<G, G>(grp.add(cipher.a, gMultiplier.multiply(randomness)),
+					grp.add(cipher.b, pkMultiplier.multiply(randomness)));
+		}
+
+		/**
+		 * Re-randomize a batch of ciphertexts, each with fresh randomness
+		 * (sampled up front from rand, as in {@link #encryptAll(List, Random)}).
+		 * @return the re-randomized ciphertexts, in the order of the input.
+		 */
+		public List<Pair<G, G>> rerandomizeAll(List<Pair<G, G>> ciphers, Random rand) {
+			return rerandomizeAll(ciphers, getRandomAll(ciphers.size(), rand));
+		}
+
+		/**
+		 * Re-randomize a batch of ciphertexts with the given randomness (randomness[i] is used for the i'th
+		 * ciphertext). The work is split between the workers of the pool, using the fixed-base tables for g and pk.
+		 * @return the re-randomized ciphertexts, in the order of the input.
+		 */
+		public List<Pair<G, G>> rerandomizeAll(List<Pair<G, G>> ciphers, final BigInteger[] randomness) {
+			if (randomness.length != ciphers.size())
+				throw new IllegalArgumentException("Number of random values doesn't match the number of ciphertexts");
+			precomputeMultipliers();
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final Pair<G, G>[] result = ciphers.toArray(new Pair[ciphers.size()]);
+			ParallelUtils.forRange(pool, 0, result.length, BATCH_GRAIN, new ParallelUtils.RangeBody() {
+				@Override
+				public void run(int from, int to) {
+					for (int i = from; i < to; ++i)
+						result[i] = rerandomize(result[i], randomness[i]);
+					normalizeAll(result, from, to);
+				}
+			});
+			return Arrays.asList(result);
+		}
+
+		/**
+		 * Re-randomize a batch of ciphertexts by adding precomputed encryptions of zero
+		 * (zeroEncryptions[i] is added to the i'th ciphertext, and must not be used again).
+		 * This costs only two group additions per ciphertext.
+		 * @return the re-randomized ciphertexts, in the order of the input.
+		 */
+		public List<Pair<G, G>> rerandomizeAll(List<Pair<G, G>> ciphers, List<Pair<G, G>> zeroEncryptions) {
+			if (zeroEncryptions.size() != ciphers.size())
+				throw new IllegalArgumentException("Number of encryptions of zero doesn't match the number of ciphertexts");
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final Pair<G, G>[] result = ciphers.toArray(new Pair[ciphers.size()]);
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final Pair<G, G>[] zeros = zeroEncryptions.toArray(new Pair[zeroEncryptions.size()]);
+			ParallelUtils.forRange(pool, 0, result.length, BATCH_GRAIN, new ParallelUtils.RangeBody() {
+				@Override
+				public void run(int from, int to) {
+					for (int i = from; i < to; ++i)
+						result[i] = add(result[i], zeros[i]);
+					normalizeAll(result, from, to);
+				}
+			});
+			return Arrays.asList(result);
+		}
+
+		/**
+		 * Re-randomize a batch of ciphertexts using encryptions of zero taken from a randomness pool
+		 * (see {@link ElGamalRandomnessPool}; if the pool runs out, the missing entries are computed in the calling thread).
+		 * @return the re-randomized ciphertexts, in the order of the input.
+		 * @throws IllegalArgumentException if the pool is for a different key.
+		 */
+		public List<Pair<G, G>> rerandomizeAll(List<Pair<G, G>> ciphers, ElGamalRandomnessPool<G> randomnessPool) {
+			if (!isSameKey(randomnessPool.pk))
+				throw new IllegalArgumentException("Randomness pool is for a different public key");
+			List<Pair<G, G>> zeros = new ArrayList<Pair<G, G>>(ciphers.size());
+			for (int i = 0; i < ciphers.size(); ++i)
+				zeros.add(randomnessPool.take().zeroEncryption);
+			return rerandomizeAll(ciphers, zeros);
+		}
+
+		/**
+		 * Return true if other is the same key: its group has the same generator and order, and its public key
+		 * element is equal to ours.
+		 */
+		boolean isSameKey(PK<G> other) {
+			return other == this || (grp.orderUpperBound().equals(other.grp.orderUpperBound())
+					&& GenericsUtils.deepEquals(g, other.g) && GenericsUtils.deepEquals(pk, other.pk));
+		}
+
+		/**
+		 * Return count independent random values for encryption (see {@link #getRandom(Random)}).
+		 */
+		public BigInteger[] getRandomAll(int count, Random rand) {
+			return IntegerUtils.getRandomIntegers(grp.orderUpperBound(), count, rand);
+		}
+
+		/**
+		 * Build the fixed-base tables before a batch operation, so that parallel workers don't
+		 * race to build them.
+		 */
+		void precomputeMultipliers() {
+			if (gMultiplier instanceof PrecomputedMultiplier)
+				((PrecomputedMultiplier<G>) gMultiplier).precompute();
+			if (pkMultiplier instanceof PrecomputedMultiplier)
+				((PrecomputedMultiplier<G>) pkMultiplier).precompute();
+		}
+
+		/**
+		 * Called by the batch operations on each range of ciphertexts they produce, from the worker
+		 * that produced them. Subclasses can convert the elements to a cheaper representation for later use
+		 * in batch (e.g., normalize elliptic-curve points with a single inversion); the default does nothing.
+		 */
+		protected void normalizeAll(Pair<G, G>[] ciphers, int from, int to) {
 		}
 
 		@Override
@@ -74,6 +260,42 @@ public class ElGamal {
 			return rnd1.add(rnd2);
 		}
 
+		/**
+		 * Sums the first and second elements of the ciphertexts separately, using
+		 * {@link org.factcenter.qilin.primitives.Group#sum(Iterable)}.
+		 */
+		@Override
+		public Pair<G, G> sum(Iterable<Pair<G, G>> ciphers) {
+			List<G> as = new ArrayList<G>();
+			List<G> bs = new ArrayList<G>();
+			for (Pair<G, G> cipher : ciphers) {
+				as.add(cipher.a);
+				bs.add(cipher.b);
+			}
+			return new Pair<G, G>(grp.sum(as), grp.sum(bs));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * If pool is null, the sum runs on the pool used by the batch operations
+		 * (see {@link #setForkJoinPool(ForkJoinPool)}).
+		 */
+		@Override
+		public Pair<G, G> sumParallel(List<Pair<G, G>> ciphers, ForkJoinPool pool) {
+			return ParallelUtils.reduce(pool != null ? pool : this.pool, ciphers, SUM_GRAIN, new ParallelUtils.Reduction<Pair<G, G>>() {
+				@Override
+				public Pair<G, G> reduce(List<Pair<G, G>> values) {
+					return sum(values);
+				}
+			});
+		}
+
+		@Override
+		public BigInteger rndsum(List<G> msgs, List<BigInteger> rnds) {
+			return IntegerUtils.sumMod(rnds, grp.orderUpperBound());
+		}
+
 		@Override
 		public BigInteger getRandom(Random rand) {
 			return IntegerUtils.getRandomInteger(grp.orderUpperBound(), rand);
@@ -83,6 +305,14 @@ public class ElGamal {
 			return pk;
 		}
 
+		/**
+		 * Return the multiplier used for the public key (e.g., to export or import its table; see
+		 * {@link org.factcenter.qilin.primitives.PrecomputedMultiplier}).
+		 */
+		public FixedBaseMultiplier<G> getPKMultiplier() {
+			return pkMultiplier;
+		}
+
 		@Override
 		public BigInteger rndmul(G msg, BigInteger rnd, BigInteger scalar) {
 			return rnd.multiply(scalar).mod(grp.orderUpperBound());
@@ -114,7 +344,7 @@ public class ElGamal {
 		BigInteger sk;
 		
 		public SK(CyclicGroup<G> grp, BigInteger sk) {
-			super(grp, grp.multiply(grp.getGenerator(), sk));
+			super(grp, grp.getFixedBaseMultiplier(grp.getGenerator()).multiply(sk));
 			this.sk = sk;
 		}
 		
@@ -130,5 +360,33 @@ public class ElGamal {
 			G grs = grp.multiply(c.a, sk);
 			return grp.add(c.b, grp.negate(grs));
 		}
+
+		/**
+		 * Decrypt a batch of ciphertexts.
+		 * The exponentiations are split between the workers of the pool (see {@link #setForkJoinPool(ForkJoinPool)}),
+		 * and each worker negates its results together with {@link org.factcenter.qilin.primitives.Group#negateAll(List)} (in Z_p^*, a single
+		 * modular inversion for every {@link #BATCH_GRAIN} ciphertexts rather than one per ciphertext).
+		 * @return the plaintexts, in the order of the ciphertexts (null if the secret key is unknown).
+		 */
+		public List<G> decryptAll(List<Pair<G, G>> ciphers) {
+			if (sk == null)
+				return null;
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final Pair<G, G>[] cs = ciphers.toArray(new Pair[ciphers.size()]);
+			@SuppressWarnings("unchecked")
+			final G[] plaintexts = (G[]) new Object[cs.length];
+			ParallelUtils.forRange(pool, 0, cs.length, BATCH_GRAIN, new ParallelUtils.RangeBody() {
+				@Override
+				public void run(int from, int to) {
+					List<G> grs = new ArrayList<G>(to - from);
+					for (int i = from; i < to; ++i)
+						grs.add(grp.multiply(cs[i].a, sk));
+					List<G> negated = grp.negateAll(grs);
+					for (int i = from; i < to; ++i)
+						plaintexts[i] = grp.add(cs[i].b, negated.get(i - from));
+				}
+			});
+			return Arrays.asList(plaintexts);
+		}
 	}
 }
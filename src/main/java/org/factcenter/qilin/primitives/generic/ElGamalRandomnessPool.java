@@ -0,0 +1,278 @@
+package org.factcenter.qilin.primitives.generic;
+
+import org.factcenter.qilin.util.Pair;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * A pool of precomputed encryptions of zero for an ElGamal public key, which splits encryption into an
+ * offline and an online phase. The offline phase (a background producer thread, or explicit calls to {@link #fill(int)})
+ * computes triples (r, g^r, pk^r); an online encryption then takes a triple from the pool and costs a single group
+ * {@link org.factcenter.qilin.primitives.Group#add(Object, Object)}.
+ * <p>
+ * As in {@link org.factcenter.qilin.protocols.generic.PrecomputedOTQueue}, the pool has a low watermark:
+ * when a take leaves the pool with at most that many entries, the producer (if started) refills it up to the
+ * high watermark, and the refill callback (if set) is called. If the pool is empty, the entry is computed
+ * in the calling thread (so encryption never blocks).
+ * <p>
+ * The pool works for any {@link org.factcenter.qilin.primitives.CyclicGroup}, and may be used from several threads.
+ *
+ * @param <G> the group element type
+ */
+public class ElGamalRandomnessPool<G> {
+	/**
+	 * A precomputed encryption of zero, and the randomness used for it.
+	 */
+	public static class Entry<G> {
+		/**
+		 * The randomness.
+		 */
+		final public BigInteger r;
+
+		/**
+		 * The encryption of zero with randomness r: (g^r, pk^r).
+		 */
+		final public Pair<G, G> zeroEncryption;
+
+		public Entry(BigInteger r, Pair<G, G> zeroEncryption) {
+			this.r = r;
+			this.zeroEncryption = zeroEncryption;
+		}
+	}
+
+	/**
+	 * An interface used to pass a callback object (allowing the owner of the pool to schedule a refill).
+	 */
+	public interface RefillCallback {
+		public void makeRequest();
+	}
+
+	/**
+	 * Number of entries the producer computes (and adds to the pool) at a time.
+	 */
+	public final static int REFILL_CHUNK = ElGamal.PK.BATCH_GRAIN;
+
+	final ElGamal.PK<G> pk;
+	final Random rand;
+	final int lowWaterMark;
+	final int highWaterMark;
+
+	final Queue<Entry<G>> entries = new ArrayDeque<Entry<G>>();
+
+	volatile RefillCallback refillCallback;
+
+	/**
+	 * The background producer (null if not started).
+	 */
+	Thread producer;
+
+	/**
+	 * Statistics: entries computed by {@link #fill(int)}, and the total time spent computing them;
+	 * entries taken from the pool, and takes that found the pool empty.
+	 */
+	long produced;
+	long produceNanos;
+	long consumed;
+	long misses;
+
+	/**
+	 * @param pk the public key
+	 * @param rand the source of randomness for the entries (it is used by the producer thread and by callers
+	 *             of {@link #fill(int)} and {@link #take()}, while holding its lock)
+	 * @param lowWaterMark refill when at most this many entries are left
+	 * @param highWaterMark the number of entries the producer fills the pool to
+	 */
+	public ElGamalRandomnessPool(ElGamal.PK<G> pk, Random rand, int lowWaterMark, int highWaterMark) {
+		if (lowWaterMark < 0 || highWaterMark <= lowWaterMark)
+			throw new IllegalArgumentException("Watermarks must satisfy 0 <= low < high");
+		this.pk = pk;
+		this.rand = rand;
+		this.lowWaterMark = lowWaterMark;
+		this.highWaterMark = highWaterMark;
+	}
+
+	public void setRefillCallback(RefillCallback refillCallback) {
+		this.refillCallback = refillCallback;
+	}
+
+	/**
+	 * Compute count entries in the calling thread.
+	 */
+	Entry<G>[] compute(int count) {
+		pk.precomputeMultipliers();
+		BigInteger[] rs;
+		// compute() runs in the producer and in the callers of fill() and take(), and Random implementations
+		// (e.g., PRGRandom) need not be thread-safe: sharing one unsynchronized could repeat randomness.
+		synchronized (rand) {
+			rs = pk.getRandomAll(count, rand);
+		}
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Pair<G, G>[] zeros = new Pair[count];
+		for (int i = 0; i < count; ++i)
+			zeros[i] = new Pair<G, G>(pk.gMultiplier.multiply(rs[i]), pk.pkMultiplier.multiply(rs[i]));
+		// Normalizing now saves the online phase the cost (e.g., EC points are converted to affine coordinates).
+		pk.normalizeAll(zeros, 0, count);
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Entry<G>[] result = new Entry[count];
+		for (int i = 0; i < count; ++i)
+			result[i] = new Entry<G>(rs[i], zeros[i]);
+		return result;
+	}
+
+	/**
+	 * Compute count entries in the calling thread and add them to the pool.
+	 * May be called from any thread (e.g., in response to the refill callback).
+	 */
+	public void fill(int count) {
+		if (count <= 0)
+			return;
+		long start = System.nanoTime();
+		Entry<G>[] computed = compute(count);
+		long elapsed = System.nanoTime() - start;
+		synchronized (this) {
+			for (Entry<G> entry : computed)
+				entries.add(entry);
+			produced += count;
+			produceNanos += elapsed;
+		}
+	}
+
+	/**
+	 * Remove an entry from the pool (computing one if the pool is empty).
+	 * The entry must not be used for more than one encryption.
+	 */
+	public Entry<G> take() {
+		Entry<G> entry;
+		boolean low;
+		synchronized (this) {
+			entry = entries.poll();
+			if (entry != null)
+				++consumed;
+			else
+				++misses;
+			low = entries.size() <= lowWaterMark;
+			if (low)
+				notifyAll();
+		}
+		RefillCallback callback = refillCallback;
+		if (low && callback != null)
+			callback.makeRequest();
+		if (entry == null)
+			entry = compute(1)[0];
+		return entry;
+	}
+
+	/**
+	 * Encrypt a plaintext using an entry from the pool.
+	 */
+	public Pair<G, G> encrypt(G plaintext) {
+		return encrypt(plaintext, take());
+	}
+
+	/**
+	 * Encrypt a plaintext using a precomputed entry (the result equals {@link ElGamal.PK#encrypt(Object, BigInteger)}
+	 * with randomness entry.r).
+	 */
+	public Pair<G, G> encrypt(G plaintext, Entry<G> entry) {
+		return new Pair<G, G>(entry.zeroEncryption.a, pk.grp.add(entry.zeroEncryption.b, plaintext));
+	}
+
+	/**
+	 * Start a background (daemon) thread that refills the pool up to the high watermark whenever it
+	 * drops to the low watermark. Does nothing if the producer is already running.
+	 */
+	public synchronized void start() {
+		if (producer != null)
+			return;
+		producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				produce();
+			}
+		}, "ElGamalRandomnessPool producer");
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * Stop the background producer (after it finishes its current chunk) and wait for it to exit.
+	 */
+	public void stop() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			thread = producer;
+			producer = null;
+			notifyAll();
+		}
+		if (thread != null)
+			thread.join();
+	}
+
+	synchronized boolean isProducing() {
+		return producer == Thread.currentThread();
+	}
+
+	void produce() {
+		while (true) {
+			int needed;
+			synchronized (this) {
+				while (isProducing() && entries.size() > lowWaterMark) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!isProducing())
+					return;
+				needed = highWaterMark - entries.size();
+			}
+			while (needed > 0 && isProducing()) {
+				int chunk = Math.min(needed, REFILL_CHUNK);
+				fill(chunk);
+				needed -= chunk;
+			}
+		}
+	}
+
+	/**
+	 * Return the number of entries currently in the pool.
+	 */
+	public synchronized int getDepth() {
+		return entries.size();
+	}
+
+	/**
+	 * Return the rate (in entries per second) at which entries are computed by {@link #fill(int)}
+	 * (and by the producer), measured over the time actually spent computing them (0 if none were computed yet).
+	 */
+	public synchronized double getRefillRate() {
+		if (produceNanos == 0)
+			return 0;
+		return produced * 1e9 / produceNanos;
+	}
+
+	/**
+	 * Return the total number of entries added to the pool.
+	 */
+	public synchronized long getProduced() {
+		return produced;
+	}
+
+	/**
+	 * Return the number of entries taken from the pool.
+	 */
+	public synchronized long getConsumed() {
+		return consumed;
+	}
+
+	/**
+	 * Return the number of takes that found the pool empty (and computed their entry online).
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
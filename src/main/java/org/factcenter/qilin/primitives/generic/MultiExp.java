@@ -0,0 +1,146 @@
+package org.factcenter.qilin.primitives.generic;
+
+import org.factcenter.qilin.primitives.Group;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Multi-scalar multiplication (multi-exponentiation) over a generic group:
+ * computing k<sub>1</sub>b<sub>1</sub>+...+k<sub>n</sub>b<sub>n</sub> using only the group's addition.
+ * For a few bases we use Straus' interleaving (one shared sequence of doublings, and a small
+ * table of multiples for each base); for many bases we use Pippenger's bucket method, whose
+ * cost per base drops as the number of bases grows.
+ */
+public class MultiExp {
+	/**
+	 * Number of bases from which the bucket method is used.
+	 */
+	public final static int PIPPENGER_THRESHOLD = 32;
+
+	/**
+	 * Window size used for Straus' method.
+	 */
+	final static int STRAUS_WINDOW_BITS = 4;
+
+	/**
+	 * Compute the sum of scalars[i]*bases[i] (see {@link Group#multiExp(List, List)}).
+	 * The scalars are first reduced modulo the group's order bound.
+	 */
+	public static <G> G multiExp(Group<G> grp, List<G> bases, List<BigInteger> scalars) {
+		if (bases.size() != scalars.size())
+			throw new IllegalArgumentException("Number of bases (" + bases.size()
+					+ ") and scalars (" + scalars.size() + ") must be equal");
+		int n = bases.size();
+		if (n == 0)
+			return grp.zero();
+
+		BigInteger order = grp.orderUpperBound();
+		BigInteger[] k = new BigInteger[n];
+		int bits = 0;
+		for (int i = 0; i < n; ++i) {
+			k[i] = scalars.get(i).mod(order);
+			bits = Math.max(bits, k[i].bitLength());
+		}
+
+		if (n < PIPPENGER_THRESHOLD)
+			return straus(grp, bases, k, bits);
+		else
+			return pippenger(grp, bases, k, bits);
+	}
+
+	/**
+	 * Add two elements, where null stands for zero.
+	 */
+	static <G> G addNullable(Group<G> grp, G a, G b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		return grp.add(a, b);
+	}
+
+	/**
+	 * Return the w-bit digit of k starting at bit pos.
+	 */
+	static int digit(BigInteger k, int pos, int w) {
+		int d = 0;
+		for (int j = 0; j < w; ++j) {
+			if (k.testBit(pos + j))
+				d |= 1 << j;
+		}
+		return d;
+	}
+
+	/**
+	 * Return 2^w * x (null stands for zero).
+	 */
+	static <G> G doubleTimes(Group<G> grp, G x, int w) {
+		if (x == null)
+			return null;
+		for (int j = 0; j < w; ++j)
+			x = grp.add(x, x);
+		return x;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <G> G straus(Group<G> grp, List<G> bases, BigInteger[] k, int bits) {
+		int n = k.length;
+		int w = STRAUS_WINDOW_BITS;
+		int tableSize = (1 << w) - 1;
+
+		// table[i][d-1] = d * bases[i]
+		Object[][] table = new Object[n][tableSize];
+		for (int i = 0; i < n; ++i) {
+			G b = bases.get(i);
+			table[i][0] = b;
+			for (int d = 1; d < tableSize; ++d)
+				table[i][d] = grp.add((G) table[i][d - 1], b);
+		}
+
+		int numWindows = (bits + w - 1) / w;
+		G result = null;
+		for (int win = numWindows - 1; win >= 0; --win) {
+			result = doubleTimes(grp, result, w);
+			for (int i = 0; i < n; ++i) {
+				int d = digit(k[i], win * w, w);
+				if (d != 0)
+					result = addNullable(grp, result, (G) table[i][d - 1]);
+			}
+		}
+		return result == null ? grp.zero() : result;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <G> G pippenger(Group<G> grp, List<G> bases, BigInteger[] k, int bits) {
+		int n = k.length;
+		// Window of roughly log(n) bits: 2^c buckets are summed for every window.
+		int c = Math.max(2, 31 - Integer.numberOfLeadingZeros(n) - 1);
+		int numBuckets = (1 << c) - 1;
+		int numWindows = (bits + c - 1) / c;
+
+		Object[] buckets = new Object[numBuckets];
+		G result = null;
+		for (int win = numWindows - 1; win >= 0; --win) {
+			result = doubleTimes(grp, result, c);
+
+			for (int j = 0; j < numBuckets; ++j)
+				buckets[j] = null;
+			for (int i = 0; i < n; ++i) {
+				int d = digit(k[i], win * c, c);
+				if (d != 0)
+					buckets[d - 1] = addNullable(grp, (G) buckets[d - 1], bases.get(i));
+			}
+
+			// sum_d d * bucket[d] = sum over j of (bucket[j] + ... + bucket[top])
+			G running = null;
+			G windowSum = null;
+			for (int j = numBuckets - 1; j >= 0; --j) {
+				running = addNullable(grp, running, (G) buckets[j]);
+				windowSum = addNullable(grp, windowSum, running);
+			}
+			result = addNullable(grp, result, windowSum);
+		}
+		return result == null ? grp.zero() : result;
+	}
+}
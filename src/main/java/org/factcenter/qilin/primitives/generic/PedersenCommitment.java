@@ -2,12 +2,18 @@ package org.factcenter.qilin.primitives.generic;
 
 import org.factcenter.qilin.primitives.Cipher;
 import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
 import org.factcenter.qilin.primitives.Homomorphic;
 import org.factcenter.qilin.primitives.NonInteractiveCommitment;
 import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.ParallelUtils;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * An implementation of Pedersen Commitment over a generic group.
@@ -37,11 +43,24 @@ public class PedersenCommitment<G> implements NonInteractiveCommitment.Committer
 	 * to computing discrete log of g in base h. 
 	 */
 	protected G h;
+
+	/**
+	 * Fixed-base multipliers for g and h.
+	 */
+	transient protected FixedBaseMultiplier<G> gMultiplier;
+	transient protected FixedBaseMultiplier<G> hMultiplier;
+
+	/**
+	 * The pool used by {@link #sumParallel(List, ForkJoinPool)} when none is given (if null, the calling thread).
+	 */
+	transient ForkJoinPool pool = ParallelUtils.getDefaultPool();
 	
 	public PedersenCommitment(CyclicGroup<G> grp, G h) {
 		this.grp = grp;
 		this.g = grp.getGenerator();
 		this.h = h;
+		this.gMultiplier = grp.getFixedBaseMultiplier(g);
+		this.hMultiplier = grp.getFixedBaseMultiplier(h);
 	}
 	
 	public CyclicGroup<G> getGroup() {
@@ -55,6 +74,23 @@ public class PedersenCommitment<G> implements NonInteractiveCommitment.Committer
 	public G getH() {
 		return h;
 	}
+
+	/**
+	 * Return the multiplier used for h (e.g., to export or import its table; see
+	 * {@link org.factcenter.qilin.primitives.PrecomputedMultiplier}).
+	 */
+	public FixedBaseMultiplier<G> getHMultiplier() {
+		return hMultiplier;
+	}
+
+	/**
+	 * Set the pool used by {@link #sumParallel(List, ForkJoinPool)} when none is given.
+	 * By default, the shared {@link ParallelUtils#getDefaultPool()} is used.
+	 * @param pool the pool to use, or null to sum in the calling thread.
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
 	
 	/**
 	 * Compute a Pedersen commitment: msg g + rnd h 
@@ -63,7 +99,7 @@ public class PedersenCommitment<G> implements NonInteractiveCommitment.Committer
 	 * @return the commitment (a group element)
 	 */
 	public G commit(BigInteger msg, BigInteger rnd) {
-		return grp.add(grp.multiply(g,msg), grp.multiply(h,rnd));
+		return grp.add(gMultiplier.multiply(msg), hMultiplier.multiply(rnd));
 	}
 
 	@Override
@@ -87,6 +123,38 @@ public class PedersenCommitment<G> implements NonInteractiveCommitment.Committer
 		return commitment.equals(commit(msg,rnd));
 	}
 
+	/**
+	 * Compute a linear combination of commitments (the commitment to the same linear combination of the messages).
+	 * @return commitments[0] * scalars[0] + ... + commitments[n-1] * scalars[n-1]
+	 */
+	public G combine(List<G> commitments, List<BigInteger> scalars) {
+		return grp.multiExp(commitments, scalars);
+	}
+
+	/**
+	 * Verify that (msg,rnd) is a valid opening of a linear combination of commitments
+	 * (see {@link #combine(List, List)}).
+	 * This is equivalent to calling {@link #verifyOpening(Object, BigInteger, BigInteger)} on the combination,
+	 * but the whole check is done using a single {@link org.factcenter.qilin.primitives.Group#multiExp(List, List)}:
+	 * we verify that msg g + rnd h - scalars[0] commitments[0] - ... - scalars[n-1] commitments[n-1] is zero.
+	 */
+	public boolean verifyLinearOpening(List<G> commitments, List<BigInteger> scalars, BigInteger msg, BigInteger rnd) {
+		if (commitments.size() != scalars.size())
+			throw new IllegalArgumentException("Number of commitments (" + commitments.size()
+					+ ") and scalars (" + scalars.size() + ") must be equal");
+		List<G> bases = new ArrayList<G>(commitments.size() + 2);
+		List<BigInteger> exps = new ArrayList<BigInteger>(commitments.size() + 2);
+		bases.add(g);
+		exps.add(msg);
+		bases.add(h);
+		exps.add(rnd);
+		for (int i = 0; i < commitments.size(); ++i) {
+			bases.add(commitments.get(i));
+			exps.add(scalars.get(i).negate());
+		}
+		return grp.multiExp(bases, exps).equals(grp.zero());
+	}
+
 	@Override
 	public G multiply(G commitment, BigInteger scalar) {
 		return grp.multiply(commitment, scalar);
@@ -102,6 +170,36 @@ public class PedersenCommitment<G> implements NonInteractiveCommitment.Committer
 		return rnd1.add(rnd2);
 	}
 
+	/**
+	 * Number of commitments summed by each parallel task in {@link #sumParallel(List, ForkJoinPool)}.
+	 */
+	public final static int SUM_GRAIN = 4096;
+
+	@Override
+	public G sum(Iterable<G> commitments) {
+		return grp.sum(commitments);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * If pool is null, the sum runs on the pool set by {@link #setForkJoinPool(ForkJoinPool)}.
+	 */
+	@Override
+	public G sumParallel(List<G> commitments, ForkJoinPool pool) {
+		return ParallelUtils.reduce(pool != null ? pool : this.pool, commitments, SUM_GRAIN, new ParallelUtils.Reduction<G>() {
+			@Override
+			public G reduce(List<G> values) {
+				return grp.sum(values);
+			}
+		});
+	}
+
+	@Override
+	public BigInteger rndsum(List<BigInteger> msgs, List<BigInteger> rnds) {
+		return IntegerUtils.sumMod(rnds, grp.orderUpperBound());
+	}
+
 	@Override
 	public BigInteger rndmul(BigInteger msg, BigInteger rnd, BigInteger scalar) {
 		return rnd.multiply(scalar).mod(grp.orderUpperBound());
@@ -112,6 +210,14 @@ public class PedersenCommitment<G> implements NonInteractiveCommitment.Committer
 		return grp.contains(commitment);
 	}
 
+	/**
+	 * Verify many commitments at once (see {@link org.factcenter.qilin.primitives.Group#containsAll(Collection)}).
+	 * @return true iff all the commitments are valid
+	 */
+	public boolean verifyCommitments(Collection<G> commitments) {
+		return grp.containsAll(commitments);
+	}
+
 	@Override
 	public boolean verifyOpening(G commitment, BigInteger element,
 			BigInteger randomness) {
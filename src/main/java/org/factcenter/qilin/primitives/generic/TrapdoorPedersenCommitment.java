@@ -38,7 +38,7 @@ implements TrapdoorNonInteractiveCommitment.EquivocatingCommitter<G, BigInteger,
 	 * @param sk
 	 */
 	public TrapdoorPedersenCommitment(CyclicGroup<G> grp, BigInteger sk) {
-		super(grp, grp.multiply(grp.getGenerator(), sk));
+		super(grp, grp.getFixedBaseMultiplier(grp.getGenerator()).multiply(sk));
 		skInv = sk.modInverse(grp.orderUpperBound());
 	}
 	
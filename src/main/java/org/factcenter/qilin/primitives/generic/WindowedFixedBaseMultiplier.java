@@ -0,0 +1,113 @@
+package org.factcenter.qilin.primitives.generic;
+
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
+import org.factcenter.qilin.primitives.Group;
+
+import java.math.BigInteger;
+
+/**
+ * A {@link FixedBaseMultiplier} for a generic group, using a table of precomputed multiples.
+ * The scalar (reduced modulo the group's order bound) is split into windows of w bits;
+ * the table holds d*2^(wi)*base for every window i and digit d, so a multiplication
+ * takes one group addition per window and no doublings.
+ * <p>
+ * The table is only built after the multiplier has been used a few times (until then
+ * {@link Group#multiply(Object, BigInteger)} is used), so creating a multiplier for a base that is
+ * used only once or twice costs nothing. The table has (2^w-1)*ceil(bits/w) elements.
+ *
+ * @param <G> the group element type
+ */
+public class WindowedFixedBaseMultiplier<G> implements FixedBaseMultiplier<G> {
+	public final static int DEFAULT_WINDOW_BITS = 4;
+
+	/**
+	 * Number of multiplications performed without the table before it is built.
+	 */
+	public final static int DEFAULT_PRECOMPUTE_THRESHOLD = 4;
+
+	final Group<G> grp;
+	final G base;
+	final BigInteger order;
+	final int windowBits;
+	final int numWindows;
+	final int precomputeThreshold;
+
+	/**
+	 * Number of multiplications performed so far (until the table is built).
+	 */
+	int uses;
+
+	/**
+	 * table[i][d-1] = d*2^(windowBits*i)*base. Null until built.
+	 */
+	volatile Object[][] table;
+
+	public WindowedFixedBaseMultiplier(Group<G> grp, G base, int windowBits, int precomputeThreshold) {
+		this.grp = grp;
+		this.base = base;
+		this.order = grp.orderUpperBound();
+		this.windowBits = windowBits;
+		this.numWindows = (order.bitLength() + windowBits - 1) / windowBits;
+		this.precomputeThreshold = precomputeThreshold;
+	}
+
+	public WindowedFixedBaseMultiplier(Group<G> grp, G base) {
+		this(grp, base, DEFAULT_WINDOW_BITS, DEFAULT_PRECOMPUTE_THRESHOLD);
+	}
+
+	@Override
+	public G getBase() {
+		return base;
+	}
+
+	/**
+	 * Return the table, building it if the multiplier has been used often enough (otherwise return null).
+	 */
+	synchronized Object[][] getTable() {
+		if (table == null && ++uses > precomputeThreshold)
+			table = buildTable();
+		return table;
+	}
+
+	Object[][] buildTable() {
+		int digits = (1 << windowBits) - 1;
+		Object[][] t = new Object[numWindows][digits];
+		G windowBase = base;
+		for (int i = 0; i < numWindows; ++i) {
+			G cur = windowBase;
+			t[i][0] = cur;
+			for (int d = 1; d < digits; ++d) {
+				cur = grp.add(cur, windowBase);
+				t[i][d] = cur;
+			}
+			// 2^w * windowBase
+			windowBase = grp.add(cur, windowBase);
+		}
+		return t;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public G multiply(BigInteger scalar) {
+		BigInteger k = scalar.mod(order);
+
+		Object[][] t = table;
+		if (t == null) {
+			t = getTable();
+			if (t == null)
+				return grp.multiply(base, k);
+		}
+
+		G result = grp.zero();
+		for (int i = 0, bit = 0; i < numWindows; ++i) {
+			int digit = 0;
+			for (int j = 0; j < windowBits; ++j, ++bit) {
+				if (k.testBit(bit))
+					digit |= 1 << j;
+			}
+			if (digit != 0)
+				result = grp.add(result, (G) t[i][digit - 1]);
+		}
+		return result;
+	}
+}
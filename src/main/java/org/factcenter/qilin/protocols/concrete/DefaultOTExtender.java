@@ -1,11 +1,13 @@
 package org.factcenter.qilin.protocols.concrete;
 
 import org.factcenter.qilin.primitives.PseudorandomGenerator;
+import org.factcenter.qilin.primitives.StreamingRandomOracle;
 import org.factcenter.qilin.protocols.BulkOT;
 import org.slf4j.LoggerFactory;
 import org.factcenter.qilin.comm.Channel;
 import org.factcenter.qilin.primitives.concrete.DigestOracle;
 import org.factcenter.qilin.primitives.concrete.ECGroup;
+import org.factcenter.qilin.primitives.concrete.FixedKeyAESOracle;
 import org.factcenter.qilin.primitives.generic.BlockCipherPRG;
 import org.factcenter.qilin.protocols.OTExtender;
 import org.factcenter.qilin.protocols.ProtocolParty;
@@ -31,6 +33,20 @@ import java.util.Random;
  *
  */
 public class DefaultOTExtender implements ProtocolParty, OTExtender {
+	/**
+	 * The random oracle used to extend OTs.
+	 */
+	public enum OracleType {
+		/**
+		 * Hash with {@link DigestOracle} (SHA-256).
+		 */
+		DIGEST,
+		/**
+		 * Hash with {@link FixedKeyAESOracle} (much faster, but relies on the correlation-robustness of fixed-key AES).
+		 */
+		FIXED_KEY_AES
+	}
+
 	int partyId;
 
 	boolean initialized;
@@ -52,24 +68,56 @@ public class DefaultOTExtender implements ProtocolParty, OTExtender {
 	 * @param partyId The Id of the party (one party should use 0 for this parameter, the other should use 1).
 	 */
 	public DefaultOTExtender(int k, int m, int lowWaterMark, int highWaterMark, int partyId) {
+		this(k, m, lowWaterMark, highWaterMark, partyId, OracleType.DIGEST);
+	}
+
+	/**
+	 * Public Constructor
+	 * @param k security parameter. Used as size of block for extension (minimum size is key-length in bits for the PRG)  
+	 * @param m number of OTs in extended block. Must be greater than k
+	 * @param lowWaterMark When client gets below this many precomputed OTs, the server will start generating more.
+	 * @param highWaterMark When client has more than this many precomputed OTs, the server will rest.
+	 * @param partyId The Id of the party (one party should use 0 for this parameter, the other should use 1).
+	 * @param oracleType The random oracle used for extension (both parties must use the same one).
+	 *                   The seed OTs always use {@link DigestOracle}.
+	 */
+	public DefaultOTExtender(int k, int m, int lowWaterMark, int highWaterMark, int partyId, OracleType oracleType) {
 		initialized = false;
 		this.partyId = partyId;
 
         PseudorandomGenerator clientPrg = new BlockCipherPRG(); // Using default implementation.
         PseudorandomGenerator serverPrg = new BlockCipherPRG();
 
-        DigestOracle clientH = new DigestOracle();
-        DigestOracle serverH = new DigestOracle();
+        StreamingRandomOracle clientH;
+        StreamingRandomOracle serverH;
+        if (oracleType == OracleType.FIXED_KEY_AES) {
+            clientH = new FixedKeyAESOracle();
+            serverH = new FixedKeyAESOracle();
+        } else {
+            clientH = new DigestOracle();
+            serverH = new DigestOracle();
+        }
 
         ECGroup grp = new ECGroup("P-256");
-        ECNaorPinkasOT seedOTs = new ECNaorPinkasOT(serverH, grp);
+        ECNaorPinkasOT seedOTs = new ECNaorPinkasOT(new DigestOracle(), grp);
 
         otClient = new PrecomputedOTClient(partyId, lowWaterMark, clientPrg, clientH);
         otServer = new OTExtensionServer(k, m, partyId, highWaterMark, seedOTs.newSender(), seedOTs.newChooser(), serverPrg, serverH);
+        // With fixed-key AES the row index is the oracle's tweak (so each row is a single AES block);
+        // DIGEST keeps the original format.
+        otServer.setRowIndexAsOracleIndex(oracleType == OracleType.FIXED_KEY_AES);
 
 		otServer.setOTConsumer(otClient);
 	}
 
+	/**
+	 * Keep the buffered precomputed OTs off the Java heap (see {@link OTExtensionServer#setOffHeapBlocks(boolean)}).
+	 * Must be called before {@link #init()}.
+	 */
+	public void setOffHeapBlocks(boolean offHeapBlocks) {
+		otServer.setOffHeapBlocks(offHeapBlocks);
+	}
+
     public void stopServer() {
         otServer.stopRunning();
     }
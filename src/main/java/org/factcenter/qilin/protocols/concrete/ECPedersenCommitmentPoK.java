@@ -9,6 +9,7 @@ import org.factcenter.qilin.primitives.generic.PedersenCommitment;
 import org.factcenter.qilin.protocols.generic.TrapdoorHomomorphicCommitmentPoK;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
  * Elliptic-curve implementation of {@link TrapdoorHomomorphicCommitmentPoK} using a {@link PedersenCommitment} as the
@@ -67,6 +68,16 @@ TrapdoorHomomorphicCommitmentPoK<ECPoint, BigInteger, BigInteger, PedersenCommit
 		protected Verifier() {
 			super(committer, pedersenFlip.newSecond(committer));
 		}
+
+		/**
+		 * Check the opening with a single multi-scalar multiplication.
+		 */
+		@Override
+		protected boolean verifyCombinedOpening(ECPoint com1, BigInteger chal, ECPoint bCom,
+				BigInteger expectedPlain, BigInteger rSum) {
+			return committer.verifyLinearOpening(Arrays.asList(com1, bCom), Arrays.asList(chal, BigInteger.ONE),
+					expectedPlain, rSum);
+		}
 	}
 	
 	public Verifier newVerifier() {
@@ -1,6 +1,7 @@
 package org.factcenter.qilin.protocols.concrete;
 
 import org.factcenter.qilin.primitives.RandomOracle;
+import org.factcenter.qilin.primitives.concrete.Zpschnorr;
 import org.factcenter.qilin.primitives.concrete.Zpsafe;
 import org.factcenter.qilin.protocols.generic.NaorPinkasOT;
 
@@ -16,4 +17,8 @@ public class ZpNaorPinkasOT extends NaorPinkasOT<BigInteger> {
 	public ZpNaorPinkasOT(RandomOracle H, Zpsafe grp) {
 		super(grp, H, grp);
 	}
+
+	public ZpNaorPinkasOT(RandomOracle H, Zpschnorr grp) {
+		super(grp, H, grp);
+	}
 }
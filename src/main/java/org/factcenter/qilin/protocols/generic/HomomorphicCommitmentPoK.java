@@ -13,6 +13,7 @@ import org.factcenter.qilin.util.StreamEncoder;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Random;
 
 
@@ -166,12 +167,19 @@ Ver extends NonInteractiveCommitment.Verifier<C, P, R> & Homomorphic<C, P, R>> {
 			
 			R rSum = commitRandomEncoder.decode(in);
 			
+			P expectedPlain = grp.multiExp(Arrays.asList(plain1, b), Arrays.asList(chal, BigInteger.ONE));
+			
+			return verifyCombinedOpening(com1, chal, bCom, expectedPlain, rSum);
+		}
+
+		/**
+		 * Check that (expectedPlain, rSum) is a valid opening of com1 * chal + bCom.
+		 * Subclasses can override this if the commitment scheme can do the check more efficiently.
+		 */
+		protected boolean verifyCombinedOpening(C com1, BigInteger chal, C bCom, P expectedPlain, R rSum) {
 			C testCommitmentMul = verifier.multiply(com1, chal);
 			C testCommitment = verifier.add(testCommitmentMul, bCom);
 			
-			P plainMul = grp.multiply(plain1, chal);
-			P expectedPlain = grp.add(plainMul, b);
-			
 			return verifier.verifyOpening(testCommitment, expectedPlain, rSum);
 		}
 
@@ -2,6 +2,7 @@ package org.factcenter.qilin.protocols.generic;
 
 import org.factcenter.qilin.comm.SendableByteArrayOutputStream;
 import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.FixedBaseMultiplier;
 import org.factcenter.qilin.primitives.RandomOracle;
 import org.factcenter.qilin.protocols.OT1of2;
 import org.factcenter.qilin.util.IntegerUtils;
@@ -40,12 +41,18 @@ public class NaorPinkasOT<G> {
 	 */
 	transient protected G g;
 
+	/**
+	 * Fixed-base multiplier for {@link #g}.
+	 */
+	transient protected FixedBaseMultiplier<G> gMultiplier;
+
 
 	public NaorPinkasOT(CyclicGroup<G> grp, RandomOracle H, StreamEncoder<G> grpEncoder) {
 		this.grp = grp;
 		this.H = H;
 		this.grpEncoder = grpEncoder;
 		this.g = grp.getGenerator();
+		this.gMultiplier = grp.getFixedBaseMultiplier(g);
 	}
 
 	public class Sender extends ProtocolPartyBase implements OT1of2.Sender {
@@ -106,9 +113,9 @@ public class NaorPinkasOT<G> {
 		 * Compute the public keys from the secret values.
 		 */
 		void precompute() {
-			C = grp.multiply(g, k);
+			C = gMultiplier.multiply(k);
 			Cr = grp.multiply(C, r);
-			gr = grp.multiply(g, r);
+			gr = gMultiplier.multiply(r);
 		}
 
 
@@ -242,7 +249,7 @@ public class NaorPinkasOT<G> {
 
 			// Choose the secret key (for generating PK_idx)
 			BigInteger s = IntegerUtils.getRandomInteger(grp.orderUpperBound(), rand);
-			G PK = grp.multiply(g, s);
+			G PK = gMultiplier.multiply(s);
 
 			if (idx == 0) {
 				//PK0=PK, PK1=C-PK
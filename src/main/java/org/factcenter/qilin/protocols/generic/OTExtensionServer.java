@@ -9,10 +9,12 @@ import org.slf4j.LoggerFactory;
 import org.factcenter.qilin.protocols.ProtocolParty;
 import org.factcenter.qilin.util.BitMatrix;
 import org.factcenter.qilin.util.EncodingUtils;
+import org.factcenter.qilin.util.ParallelUtils;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -105,6 +107,33 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
 	 */
 	PrecomputedOTClient otConsumer;
 	
+	/**
+	 * Pool used for the large matrix operations of the extension (null to run them sequentially).
+	 */
+	ForkJoinPool pool = ParallelUtils.getDefaultPool();
+
+	/**
+	 * If true, blocks handed to {@link #otConsumer} are moved to off-heap storage.
+	 */
+	boolean offHeapBlocks;
+
+	/**
+	 * If true, the row index is passed to {@link #H} as the oracle index; otherwise it is hashed
+	 * as a 4-byte prefix of the row (and the oracle index is 0).
+	 */
+	boolean rowIndexAsOracleIndex;
+
+	/**
+	 * Buffer for the encoded row index.
+	 */
+	final byte[] indexBytes = new byte[4];
+
+	/**
+	 * Reusable buffers for the matrices received in {@link #extendChoiceOTs()}.
+	 */
+	final BitMatrix y0Buf = new BitMatrix();
+	final BitMatrix y1Buf = new BitMatrix();
+
 	/**
 	 * A flag to let the generator know to exit.
 	 */
@@ -155,6 +184,52 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
 		});
 	}
 
+	/**
+	 * Set the pool on which the matrix operations (random fill, clone, transpose) of each extension run.
+	 * By default, the shared {@link ParallelUtils#getDefaultPool()} is used.
+	 * @param pool the pool to use, or null to run everything in the server thread.
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Store the precomputed blocks handed to the OT consumer off the Java heap.
+	 * This is useful with a large high-water mark: the buffered OTs then don't
+	 * add to the heap (and garbage-collection) size. Blocks are copied back to the heap as they are consumed.
+	 * @param offHeapBlocks
+	 */
+	public void setOffHeapBlocks(boolean offHeapBlocks) {
+		this.offHeapBlocks = offHeapBlocks;
+	}
+
+	/**
+	 * Pass the row index to the random oracle as its index (tweak) instead of hashing it with the row.
+	 * This keeps each row within a single block of a
+	 * {@link org.factcenter.qilin.primitives.concrete.FixedKeyAESOracle}. The default (a 4-byte prefix)
+	 * is the original format. Both parties must use the same setting.
+	 * @param rowIndexAsOracleIndex
+	 */
+	public void setRowIndexAsOracleIndex(boolean rowIndexAsOracleIndex) {
+		this.rowIndexAsOracleIndex = rowIndexAsOracleIndex;
+	}
+
+	/**
+	 * Hash the row with index i (len bytes of row, starting at offs) into the first outlen bytes of out.
+	 */
+	void hashRow(int i, byte[] row, int offs, int len, byte[] out, int outlen) {
+		H.reset();
+		if (rowIndexAsOracleIndex) {
+			H.update(row, offs, len);
+			H.digest(i, out, 0, outlen);
+		} else {
+			EncodingUtils.encode(i, indexBytes, 0);
+			H.update(indexBytes, 0, indexBytes.length);
+			H.update(row, offs, len);
+			H.digest(0, out, 0, outlen);
+		}
+	}
+
 	/**
 	 * Set the relevant class members for this class and for the seedOTFactory.
 	 */
@@ -266,10 +341,10 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
 		r.fillRandom(rand);
 
 		BitMatrix T = new BitMatrix(m, k);
-		T.fillRandom(rand);
+		T.fillRandomParallel(rand, pool);
 
 		// Every row of T xored with r
-		BitMatrix Tr = T.clone();
+		BitMatrix Tr = T.cloneParallel(pool);
 
 		for (int i = 0; i < Tr.getNumRows(); ++i) {
 			Tr.xorRow(i, r, 0);
@@ -280,20 +355,18 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
 		BitMatrix y0;
 		BitMatrix y1;
 
-		y0 = in.readObject(BitMatrix.class);
-		y1 = in.readObject(BitMatrix.class);
+		y0 = in.readObject(y0Buf);
+		y1 = in.readObject(y1Buf);
 
-		BitMatrix Tt = T.transpose();
+		BitMatrix Tt = T.transposeParallel(pool);
 		BitMatrix results = new BitMatrix(k,m);
-		byte[] tmp = new byte[4];
+		// The oracle output is written directly into hj's backing array
+		// (xorRow ignores the padding bits, so we don't need to zero them).
+		BitMatrix hj = new BitMatrix(k, 1);
+		byte[] hbits = hj.getBackingArray();
 		for (int i = 0; i < m; ++i) {
-			EncodingUtils.encode(i, tmp, 0);
-			H.reset();
-			H.update(tmp, 0, 4);
 			assert(Tt.isZeroPadded());
-			H.update(Tt.getBackingArray(), Tt.getRowIndex(i), Tt.getUsedBytesPerRow());
-			byte[] hbits = H.digest(0, k);
-			BitMatrix hj = new BitMatrix(hbits, 0, k, 1);
+			hashRow(i, Tt.getBackingArray(), Tt.getRowIndex(i), Tt.getUsedBytesPerRow(), hbits, hj.getUsedBytesPerRow());
 
 			if (r.getBit(i) == 0) {
 				results.copyRow(i, y0, i);
@@ -309,6 +382,8 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
             PrecomputedChoiceOTBlock reservedBlock = choiceBlock.remove(choiceOTreserve);
             choiceOTs.addOTs(reservedBlock);
         }
+        if (offHeapBlocks)
+            choiceBlock = choiceBlock.toOffHeap();
         otConsumer.getChoiceOTBlockQueue().addOTs(choiceBlock);
 	}
 
@@ -342,8 +417,8 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
 		// m pre-computed OTs of k-bit strings.
 		BitMatrix x0 = new BitMatrix(k, m);
 		BitMatrix x1 = new BitMatrix(k, m);
-		x0.fillRandom(rand);
-		x1.fillRandom(rand);
+		x0.fillRandomParallel(rand, pool);
+		x1.fillRandomParallel(rand, pool);
 
 		// Initialize a random vector s
 		BitMatrix s = new BitMatrix(k);
@@ -354,32 +429,25 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
 		BitMatrix Q = otClientForExtension.receive(s);
 
 		// The matrix Qt has m rows of length k
-		BitMatrix Qt = Q.transpose();
-
-		BitMatrix y0 = x0.clone();
-		BitMatrix y1 = x1.clone();
-		byte[] tmp = new byte[4];
+		BitMatrix Qt = Q.transposeParallel(pool);
+
+		BitMatrix y0 = x0.cloneParallel(pool);
+		BitMatrix y1 = x1.cloneParallel(pool);
+		// Buffers reused for every row (the oracle output is written directly into the backing arrays;
+		// xorRow ignores the padding bits, so we don't need to zero them).
+		BitMatrix h = new BitMatrix(k, 1);
+		byte[] hbytes = h.getBackingArray();
+		BitMatrix qsi = new BitMatrix(k, 1);
 		for (int i = 0; i < m; ++i) {
-			EncodingUtils.encode(i, tmp, 0);
-
-			H.reset();
-			H.update(tmp, 0, 4);
 			assert(Qt.isZeroPadded());
-			H.update(Qt.getBackingArray(), Qt.getRowIndex(i), Qt.getUsedBytesPerRow());
-			byte[] h0bytes = H.digest(0, k);
-			BitMatrix h0 = new BitMatrix(h0bytes, 0, k, 1);
-			y0.xorRow(i, h0, 0);
+			hashRow(i, Qt.getBackingArray(), Qt.getRowIndex(i), Qt.getUsedBytesPerRow(), hbytes, h.getUsedBytesPerRow());
+			y0.xorRow(i, h, 0);
 
-			BitMatrix qsi = s.clone();
+			qsi.copyRow(0, s, 0);
 			qsi.xorRow(0, Qt, i);
-			H.reset();
-			H.update(tmp, 0, 4);
 			assert(qsi.isZeroPadded());
-			H.update(qsi.getBackingArray(), 0, qsi.getUsedBytesPerRow());
-
-			byte[] h1bytes = H.digest(0, qsi.getUsedBytesPerRow());
-			BitMatrix h1 = new BitMatrix(h1bytes, 0, k, 1);
-			y1.xorRow(i, h1, 0);
+			hashRow(i, qsi.getBackingArray(), 0, qsi.getUsedBytesPerRow(), hbytes, h.getUsedBytesPerRow());
+			y1.xorRow(i, h, 0);
 		}
 
 		out.writeObject(y0);
@@ -392,6 +460,8 @@ public class OTExtensionServer extends ProtocolPartyBase implements Runnable {
             sendingOTs.addOTs(reservedBlock);
         }
 
+        if (offHeapBlocks)
+            sendingBlock = sendingBlock.toOffHeap();
         otConsumer.getSendingOTBlockQueue().addOTs(sendingBlock);
 	}
 
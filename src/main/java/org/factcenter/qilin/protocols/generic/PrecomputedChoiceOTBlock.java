@@ -1,6 +1,7 @@
 package org.factcenter.qilin.protocols.generic;
 
 import org.factcenter.qilin.util.BitMatrix;
+import org.factcenter.qilin.util.OffHeapBitMatrix;
 
 /**
  * A class for holding a single block of precomputed OTs (for the chooser).
@@ -24,11 +25,31 @@ class PrecomputedChoiceOTBlock implements PrecomputedOTBlock<PrecomputedChoiceOT
 	 * in the OT whose choice bit is given by {@link #choices}[i].
 	 */
 	private BitMatrix results;
+
+	/**
+	 * Off-heap storage for the results (if non-null, used instead of {@link #results}).
+	 * The choice bits are always kept on the heap (they are smaller by a factor of the string length).
+	 */
+	private OffHeapBitMatrix offHeapResults;
 	
+	/**
+	 * Return the matrix of results.
+	 * For off-heap blocks this copies the entire block to the heap; use {@link #remove(int)} to take
+	 * a prefix instead.
+	 */
 	public final BitMatrix getResults() {
+		if (offHeapResults != null)
+			return offHeapResults.toBitMatrix();
 		return results;
 	}
 
+	/**
+	 * Whether the block's results are stored off the Java heap.
+	 */
+	public final boolean isOffHeap() {
+		return offHeapResults != null;
+	}
+
 	public final int getChoiceBit(int i) {
 		return choices.getBit(choiceOffs + i);
 	}
@@ -38,6 +59,8 @@ class PrecomputedChoiceOTBlock implements PrecomputedOTBlock<PrecomputedChoiceOT
 	 * @return
 	 */
 	public final int getNumOTs() {
+		if (offHeapResults != null)
+			return offHeapResults.getNumRows();
 		return results.getNumRows();
 	}
 
@@ -48,20 +71,38 @@ class PrecomputedChoiceOTBlock implements PrecomputedOTBlock<PrecomputedChoiceOT
 	 * @return
 	 */
 	public PrecomputedChoiceOTBlock getSubBlock(int offs, int num) {
+		if (offHeapResults != null)
+			return new PrecomputedChoiceOTBlock(choices, choiceOffs + offs, offHeapResults.getRows(offs, num));
 		return new PrecomputedChoiceOTBlock(choices, choiceOffs + offs, results.getSubMatrix(offs, num));
 	}
 	
 	/**
 	 * Remove the first num OTs from this block and return them as a new subblock (this block will be modified as well).
+	 * The returned subblock is always stored on the heap.
 	 * @param num
 	 * @return
 	 */
 	public PrecomputedChoiceOTBlock remove(int num) {
+		if (offHeapResults != null) {
+			PrecomputedChoiceOTBlock retval = new PrecomputedChoiceOTBlock(choices, choiceOffs,
+					offHeapResults.removeRows(num));
+			choiceOffs += num;
+			return retval;
+		}
 		PrecomputedChoiceOTBlock retval = getSubBlock(0, num);
 		choiceOffs += num;
 		results.subrows(num, getNumOTs() - num);
 		return retval;
 	}
+
+	/**
+	 * Return a copy of this block whose results are stored off the Java heap.
+	 */
+	public PrecomputedChoiceOTBlock toOffHeap() {
+		if (offHeapResults != null)
+			return this;
+		return new PrecomputedChoiceOTBlock(choices, choiceOffs, new OffHeapBitMatrix(results));
+	}
 	
 	public PrecomputedChoiceOTBlock(BitMatrix choiceBits, int choiceOffs, BitMatrix resultBits) {
 		this.choices = choiceBits;
@@ -72,5 +113,11 @@ class PrecomputedChoiceOTBlock implements PrecomputedOTBlock<PrecomputedChoiceOT
 	public PrecomputedChoiceOTBlock(BitMatrix choiceBits, BitMatrix resultBits) {
 		this(choiceBits, 0, resultBits);
 	}
+
+	public PrecomputedChoiceOTBlock(BitMatrix choiceBits, int choiceOffs, OffHeapBitMatrix resultBits) {
+		this.choices = choiceBits;
+		this.choiceOffs = choiceOffs;
+		this.offHeapResults = resultBits;
+	}
 }
 
@@ -7,10 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.factcenter.qilin.util.BitMatrix;
 
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
-import java.security.InvalidKeyException;
 
 public class PrecomputedOTClient extends ProtocolPartyBase implements OTExtender {
 
@@ -53,6 +50,17 @@ public class PrecomputedOTClient extends ProtocolPartyBase implements OTExtender
 
     PrecomputedOTQueue<PrecomputedSendingOTBlock> sendingOTs;
 
+    /**
+     * Reusable buffer for the masked choices received in {@link #send(BitMatrix, BitMatrix)}.
+     */
+    final BitMatrix maskedChoicesBuf = new BitMatrix();
+
+    /**
+     * Reusable buffers for the masked strings received in {@link #receiveReadingPhase(State)}.
+     */
+    final BitMatrix masked0Buf = new BitMatrix();
+    final BitMatrix masked1Buf = new BitMatrix();
+
 	public int getAvailableSendingOTs() {
         int available = sendingOTs.getAvailableOTs();
         return  available < reservedSending ? 0 : available - reservedSending;
@@ -170,9 +178,6 @@ public class PrecomputedOTClient extends ProtocolPartyBase implements OTExtender
 		BitMatrix mask0 = new BitMatrix(OTlen, numOTs);
 		BitMatrix mask1 = new BitMatrix(OTlen, numOTs);
 
-		byte[] mask0bits = mask0.getBackingArray();
-		byte[] mask1bits = mask1.getBackingArray();
-
 		for (int i = 0; i < numOTs; ) {
 			PrecomputedSendingOTBlock sendingOTs = getSendingOTs(numOTs - i);
 
@@ -181,41 +186,25 @@ public class PrecomputedOTClient extends ProtocolPartyBase implements OTExtender
 			int keyLen = precompX0.getNumCols();
 			assert(precompX1.getNumCols() == keyLen);
 
-			for (int j = 0; j < sendingOTs.getNumOTs(); ++j) {
-				// Prepare the mask bits.
-
-				if (OTlen > keyLen) {
-					
-					// We use the keyLen bits given by the precomputed OT as a seed for a PRG to expand them to OTlen pseudorandom bits.
-					assert(precompX0.isZeroPadded());
-					SecretKey key0 = new SecretKeySpec(precompX0.getBackingArray(), precompX0.getRowIndex(j), 
-							precompX0.getUsedBytesPerRow(), "");
-					try {
-						prg.setKey(key0);
-						prg.getPRGBytes(mask0bits, mask0.getRowIndex(i), mask0.getUsedBytesPerRow());
-
-
-						assert(precompX1.isZeroPadded());	
-						SecretKey key1 = new SecretKeySpec(precompX1.getBackingArray(), precompX1.getRowIndex(j), 
-								precompX1.getUsedBytesPerRow(), "");
-
-						prg.setKey(key1);
-						prg.getPRGBytes(mask1bits, mask1.getRowIndex(i), mask1.getUsedBytesPerRow());
-					} catch (InvalidKeyException e) {
-						throw new RuntimeException("Invalid key -- should never happen (PRG should always accept this key type): "
-								+ e.getMessage());
-					}
-				} else {
+			// Prepare the mask bits.
+			if (OTlen > keyLen) {
+				// We use the keyLen bits given by the precomputed OT as a seed for a PRG to expand them to OTlen pseudorandom bits.
+				assert(precompX0.isZeroPadded() && precompX1.isZeroPadded());
+				prg.expandRows(precompX0, 0, mask0, i, sendingOTs.getNumOTs());
+				prg.expandRows(precompX1, 0, mask1, i, sendingOTs.getNumOTs());
+				i += sendingOTs.getNumOTs();
+			} else {
+				for (int j = 0; j < sendingOTs.getNumOTs(); ++j) {
 					mask0.copyRow(i, precompX0, j);
 					mask1.copyRow(i, precompX1, j);
+					++i;
 				}
-				++i;
 			}
 		}
 
 		// Receive the vector of masked choice bits
 
-		BitMatrix maskedChoices = in.readObject(BitMatrix.class);
+		BitMatrix maskedChoices = in.readObject(maskedChoicesBuf);
 
 		for (int i = 0; i < numOTs; ++i) {
 			if (maskedChoices.getBit(i) == 0) {
@@ -305,34 +294,21 @@ public class PrecomputedOTClient extends ProtocolPartyBase implements OTExtender
 		ReceiveState state = (ReceiveState) bulkState;
 		int numOTs = state.choices.getNumCols();
 		
-		BitMatrix masked0 = in.readObject(BitMatrix.class);
-		BitMatrix masked1 = in.readObject(BitMatrix.class);
+		BitMatrix masked0 = in.readObject(masked0Buf);
+		BitMatrix masked1 = in.readObject(masked1Buf);
 
-		// We only know the number of columns now (this causes an extra allocation).
+		// We only know the number of columns now.
 		assert(masked0.getNumCols() == masked1.getNumCols());
 		int OTLen = masked0.getNumCols();
 
 		assert(state.maskKeys.isZeroPadded());
-		byte[] keyBits = state.maskKeys.getBackingArray();
 		int keyLen = state.maskKeys.getNumCols();
-		int keyLenBytes = state.maskKeys.getUsedBytesPerRow();
 
 		BitMatrix results;
 
 		if (OTLen > keyLen) {
 			results = new BitMatrix(OTLen, numOTs);
-
-			for (int i = 0; i < numOTs; ++i) {
-				SecretKey key = new SecretKeySpec(keyBits, state.maskKeys.getRowIndex(i), keyLenBytes, "");
-				try {
-					prg.setKey(key);
-				} catch (InvalidKeyException e) {
-					throw new RuntimeException("Invalid key -- should never happen (PRG should always accept this key type): "
-							+ e.getMessage());
-				}
-				prg.getPRGBytes(results.getBackingArray(), results.getRowIndex(i), results.getUsedBytesPerRow());
-			}
-			results.zeroPad();
+			prg.expandRows(state.maskKeys, 0, results, 0, numOTs);
 		} else {
 			results = state.maskKeys;
 			results.subcolumns(0, OTLen);
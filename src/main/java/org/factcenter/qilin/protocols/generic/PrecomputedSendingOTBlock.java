@@ -1,6 +1,7 @@
 package org.factcenter.qilin.protocols.generic;
 
 import org.factcenter.qilin.util.BitMatrix;
+import org.factcenter.qilin.util.OffHeapBitMatrix;
 
 /**
  * A class for holding a single block of precomputed OTs (for the sender).
@@ -18,16 +19,43 @@ class PrecomputedSendingOTBlock implements PrecomputedOTBlock<PrecomputedSending
 	 */
 	private BitMatrix x1;
 
+	/**
+	 * Off-heap storage for the 0-choice strings (if non-null, used instead of {@link #x0}).
+	 */
+	private OffHeapBitMatrix offHeapX0;
+
+	/**
+	 * Off-heap storage for the 1-choice strings (if non-null, used instead of {@link #x1}).
+	 */
+	private OffHeapBitMatrix offHeapX1;
 
+
+	/**
+	 * Return the matrix of strings for choice i.
+	 * For off-heap blocks this copies the entire block to the heap; use {@link #remove(int)} to take
+	 * a prefix instead.
+	 * @param i
+	 */
 	public final BitMatrix getX(int i) {
+		if (offHeapX0 != null)
+			return (i == 0) ? offHeapX0.toBitMatrix() : offHeapX1.toBitMatrix();
 		return (i == 0) ? x0 : x1;
 	}
+
+	/**
+	 * Whether the block's strings are stored off the Java heap.
+	 */
+	public final boolean isOffHeap() {
+		return offHeapX0 != null;
+	}
 	
 	/**
 	 * The number of precomputed OT instances in the block.
 	 * @return
 	 */
 	public final int getNumOTs() {
+		if (offHeapX0 != null)
+			return offHeapX0.getNumRows();
 		if (x0 == null)
 			return 0;
 		return x0.getNumRows();
@@ -40,15 +68,21 @@ class PrecomputedSendingOTBlock implements PrecomputedOTBlock<PrecomputedSending
 	 * @return
 	 */
 	public PrecomputedSendingOTBlock getSubBlock(int offs, int num) {
+		if (offHeapX0 != null)
+			return new PrecomputedSendingOTBlock(offHeapX0.getRows(offs, num), offHeapX1.getRows(offs, num));
 		return new PrecomputedSendingOTBlock(x0.getSubMatrix(offs, num), x1.getSubMatrix(offs, num));
 	}
 	
 	/**
 	 * Remove the first num OTs from this block and return them as a new subblock (this block will be modified as well).
+	 * The returned subblock is always stored on the heap.
 	 * @param num
 	 * @return
 	 */
 	public PrecomputedSendingOTBlock remove(int num) {
+		if (offHeapX0 != null)
+			return new PrecomputedSendingOTBlock(offHeapX0.removeRows(num), offHeapX1.removeRows(num));
+
 		PrecomputedSendingOTBlock retval = getSubBlock(0, num);
 		int newSize = getNumOTs() - num;
 		x0.subrows(num, newSize);
@@ -57,8 +91,22 @@ class PrecomputedSendingOTBlock implements PrecomputedOTBlock<PrecomputedSending
 	}
 	
 	
+	/**
+	 * Return a copy of this block whose strings are stored off the Java heap.
+	 */
+	public PrecomputedSendingOTBlock toOffHeap() {
+		if (offHeapX0 != null)
+			return this;
+		return new PrecomputedSendingOTBlock(new OffHeapBitMatrix(x0), new OffHeapBitMatrix(x1));
+	}
+	
 	public PrecomputedSendingOTBlock(BitMatrix x0, BitMatrix x1) {
 		this.x0 = x0;
 		this.x1 = x1;
 	}
+
+	public PrecomputedSendingOTBlock(OffHeapBitMatrix x0, OffHeapBitMatrix x1) {
+		this.offHeapX0 = x0;
+		this.offHeapX1 = x1;
+	}
 }
\ No newline at end of file
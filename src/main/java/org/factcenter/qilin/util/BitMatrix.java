@@ -7,8 +7,10 @@ import org.factcenter.qilin.comm.SendableOutput;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Represents a matrix of bits with corresponding operations.
@@ -58,6 +60,31 @@ public final class BitMatrix implements Sendable, Cloneable {
 	 */
 	transient int bytesPerRow;
 
+	/**
+	 * Little-endian view of {@link #bits}, used by the word-at-a-time (64 bit) kernels.
+	 * Recreated whenever the backing array changes.
+	 */
+	transient ByteBuffer wordView;
+
+	/**
+	 * Approximate number of bytes below which the parallel operations
+	 * ({@link #xorParallel(BitMatrix, ForkJoinPool)}, {@link #transposeParallel(ForkJoinPool)}, etc.)
+	 * run sequentially; larger matrices are split into pieces of about this size.
+	 */
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Size of the per-thread buffer used to gather padded rows in {@link #writeTo(SendableOutput)}.
+	 */
+	static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	private static final ThreadLocal<byte[]> writeBuffer = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[WRITE_BUFFER_SIZE];
+		}
+	};
+
 
     /**
      * How many bytes are used for a row with a specified number of columns.
@@ -434,6 +461,28 @@ public final class BitMatrix implements Sendable, Cloneable {
         // No need to copy-on-write, we just created a brand-new bit array.
 		return new BitMatrix(newbits, 0, numCols, numRows, getUsedBytesPerRow(), false, true);
 	}
+
+	/**
+	 * Same as {@link #clone()}, but copies row ranges in parallel on pool
+	 * (if the matrix is larger than {@link #PARALLEL_THRESHOLD} bytes).
+	 * @param pool the pool to run on (if null, runs sequentially).
+	 */
+	public final BitMatrix cloneParallel(ForkJoinPool pool) {
+		final int used = getUsedBytesPerRow();
+		if (pool == null || numRows * used <= PARALLEL_THRESHOLD)
+			return clone();
+
+		final byte[] newbits = new byte[numRows * used];
+		ParallelUtils.forRange(pool, 0, numRows, PARALLEL_THRESHOLD / Math.max(1, used), new ParallelUtils.RangeBody() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; ++i)
+					System.arraycopy(bits, getRowIndex(i), newbits, i * used, used);
+			}
+		});
+		// The constructor zero-pads the copy if necessary.
+		return new BitMatrix(newbits, 0, numCols, numRows, used, false, true);
+	}
 	
 	
 	/**
@@ -511,6 +560,39 @@ public final class BitMatrix implements Sendable, Cloneable {
         rand.nextBytes(bits);
 		zeroPad();
 	}
+
+	/**
+	 * Fill the matrix with random bits, generating pieces of the backing array in parallel on pool
+	 * (if the matrix is larger than {@link #PARALLEL_THRESHOLD} bytes).
+	 * Since rand itself can't be shared between threads, each piece is generated by a separate
+	 * {@link PRGRandom} seeded from rand (for smaller matrices this is identical to {@link #fillRandom(Random)}).
+	 * @param rand source of randomness (used only by the calling thread)
+	 * @param pool the pool to run on (if null, runs sequentially).
+	 */
+	public void fillRandomParallel(Random rand, ForkJoinPool pool) {
+		if (pool == null || numRows * getUsedBytesPerRow() <= PARALLEL_THRESHOLD) {
+			fillRandom(rand);
+			return;
+		}
+		if (copyOnWrite || rowOffs != 0 || bits.length > getNumRows() * bytesPerRow || bytesPerRow > getUsedBytesPerRow())
+			allocate();
+
+		final int numPieces = (bits.length + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+		final byte[][] seeds = new byte[numPieces][16];
+		for (byte[] seed : seeds)
+			rand.nextBytes(seed);
+
+		ParallelUtils.forRange(pool, 0, numPieces, 1, new ParallelUtils.RangeBody() {
+			@Override
+			public void run(int from, int to) {
+				for (int i = from; i < to; ++i) {
+					int start = i * PARALLEL_THRESHOLD;
+					new PRGRandom(seeds[i]).nextBytes(bits, start, Math.min(PARALLEL_THRESHOLD, bits.length - start));
+				}
+			}
+		});
+		zeroPad();
+	}
 	
 	/**
 	 * Return the backing array.
@@ -518,6 +600,41 @@ public final class BitMatrix implements Sendable, Cloneable {
 	public final byte[] getBackingArray() {
 		return bits;
 	}
+
+	/**
+	 * Return a little-endian {@link ByteBuffer} view of the backing array, so that
+	 * 8 consecutive bytes (64 consecutive columns) can be read and written as a single long.
+	 */
+	final ByteBuffer words() {
+		if (wordView == null || wordView.array() != bits)
+			wordView = ByteBuffer.wrap(bits).order(ByteOrder.LITTLE_ENDIAN);
+		return wordView;
+	}
+
+	/**
+	 * XOR len bytes of src (starting at srcPos) into dst (starting at dstPos), 8 bytes at a time.
+	 */
+	static void xorBytes(ByteBuffer dst, int dstPos, ByteBuffer src, int srcPos, int len) {
+		int i = 0;
+		for (; i + 8 <= len; i += 8)
+			dst.putLong(dstPos + i, dst.getLong(dstPos + i) ^ src.getLong(srcPos + i));
+		for (; i < len; ++i)
+			dst.put(dstPos + i, (byte) (dst.get(dstPos + i) ^ src.get(srcPos + i)));
+	}
+
+	/**
+	 * Compare len bytes of a (starting at aPos) with b (starting at bPos), 8 bytes at a time.
+	 */
+	static boolean equalBytes(ByteBuffer a, int aPos, ByteBuffer b, int bPos, int len) {
+		int i = 0;
+		for (; i + 8 <= len; i += 8)
+			if (a.getLong(aPos + i) != b.getLong(bPos + i))
+				return false;
+		for (; i < len; ++i)
+			if (a.get(aPos + i) != b.get(bPos + i))
+				return false;
+		return true;
+	}
 	
 	/**
 	 * Return the array in packed format.
@@ -795,8 +912,7 @@ public final class BitMatrix implements Sendable, Cloneable {
 		
 		int startPosA = getRowIndex(dstRow);
 		int startPosB = src.getRowIndex(srcRow);
-		for (int i = 0; i < usedBytes; ++i)
-			bits[startPosA + i] ^= src.bits[startPosB + i];
+		xorBytes(words(), startPosA, src.words(), startPosB, usedBytes);
 		if (partialByte != 0) {
 			bits[startPosA + usedBytes] ^= src.bits[startPosB + usedBytes] & bitMask;
 		}
@@ -839,33 +955,11 @@ public final class BitMatrix implements Sendable, Cloneable {
 			int srcPos = src.getRowIndex(srcRow) + srcStart / 8;
 			System.arraycopy(src.bits, srcPos, bits, dstPos, srcLen / 8);
 		} else {
-			// Do things inefficiently, bit by bit...
-			for (int i = 0; i < srcLen; ++i) {
-				setBit(dstStart + i, dstRow, src.getBit(srcStart + i, srcRow));
+			// Unaligned: move up to 64 bits at a time.
+			for (int i = 0; i < srcLen; i += 64) {
+				int len = Math.min(64, srcLen - i);
+				setBits(dstStart + i, dstRow, len, src.getBits(srcStart + i, srcRow, len));
 			}
-			
-			/*
-			 * TODO: Complete efficient implementation that uses arraycopy for the
-			 * the middle and bit operations for the edges.
-			
-			// Compute location of first full byte
-			int dstBytePos = getRowIndex(dstRow) + dstStart / 8;
-			if (dstStart % 8 != 0)
-				++dstBytePos;
-			
-			int srcFullLen = srcLen - (8 - (dstStart % 8));
-			int srcByteLen = srcFullLen / 8;
-			
-			int srcBytePos = src.getRowIndex(srcRow) + ;
-			
-			
-			System.arraycopy(src.bits, srcPos, bits, dstPos, getUsedBytesPerRow());
-			
-			// Number of full bytes to copy
-			int dstFullLen = srcLen / 8;
-
-			*/
-
 		}
 		
 	}
@@ -926,7 +1020,34 @@ public final class BitMatrix implements Sendable, Cloneable {
 	 */
 	public final void xor(BitMatrix b) {
         internalCopy();
+        xorRows(b, 0, getNumRows());
+	}
+
+	/**
+	 * Same as {@link #xor(BitMatrix)}, but xors row ranges in parallel on pool
+	 * (if the matrix is larger than {@link #PARALLEL_THRESHOLD} bytes).
+	 * @param b
+	 * @param pool the pool to run on (if null, runs sequentially).
+	 */
+	public final void xorParallel(final BitMatrix b, ForkJoinPool pool) {
+        internalCopy();
+        // Create the word views before handing them to other threads
+        words();
+        b.words();
+
+		ParallelUtils.forRange(pool, 0, getNumRows(), PARALLEL_THRESHOLD / Math.max(1, getUsedBytesPerRow()),
+				new ParallelUtils.RangeBody() {
+			@Override
+			public void run(int from, int to) {
+				xorRows(b, from, to);
+			}
+		});
+	}
 
+	/**
+	 * Xor rows [rowStart, rowEnd) of b into this matrix (which must not be copy-on-write).
+	 */
+	private void xorRows(BitMatrix b, int rowStart, int rowEnd) {
 		assert(getNumRows() <= b.getNumRows()) :
                 String.format("BitMatrix xor dest is smaller (%dx%d) than source (%dx%d)", getNumCols(),getNumRows(),b.getNumCols(), b.getNumRows());
 		assert(getNumCols() <= b.getNumCols()) :
@@ -938,13 +1059,13 @@ public final class BitMatrix implements Sendable, Cloneable {
 		if (partialByte != 0)
 			--used;
 		
-		for (int i = 0; i < getNumRows(); ++i) {
+		ByteBuffer wordsA = words();
+		ByteBuffer wordsB = b.words();
+		for (int i = rowStart; i < rowEnd; ++i) {
 			int startA = getRowIndex(i);
 			int startB = b.getRowIndex(i);
 			
-			for (int j = 0; j < used; ++j) {
-				bits[startA + j] ^= b.bits[startB + j];
-			}
+			xorBytes(wordsA, startA, wordsB, startB, used);
 			if (partialByte != 0) {
 				int bitMask;
 				bitMask = (1 << partialByte) - 1;					
@@ -954,40 +1075,182 @@ public final class BitMatrix implements Sendable, Cloneable {
 	}
 	
 	/**
-	 * Transpose the matrix
+	 * Transpose the matrix.
+	 * The matrix is processed in tiles of 64x64 bits: each tile is loaded into 64 long words,
+	 * transposed in-register and written to the destination, so the cost is a few word operations
+	 * per 64 bits rather than a {@link #getBit(int, int)}/{@link #setBit(int, int, int)} pair per bit.
 	 * @return the transpose.
 	 */
 	public final BitMatrix transpose() {
-		// TODO: Improve efficiency.
 		BitMatrix T = new BitMatrix(getNumRows(), getNumCols());
-		
-		for (int i = 0; i < getNumRows(); ++i)
-			for (int j = 0; j < getNumCols(); ++j)
-				T.setBit(i, j, getBit(j, i));
-		
+		transposeTiles(T, 0, (getNumCols() + 63) / 64, 0, (getNumRows() + 63) / 64);
+		return T;
+	}
+
+	/**
+	 * Same as {@link #transpose()}, but transposes ranges of tiles in parallel on pool
+	 * (if the matrix is larger than {@link #PARALLEL_THRESHOLD} bytes).
+	 * @param pool the pool to run on (if null, runs sequentially).
+	 * @return the transpose.
+	 */
+	public final BitMatrix transposeParallel(ForkJoinPool pool) {
+		if (pool == null || numRows * getUsedBytesPerRow() <= PARALLEL_THRESHOLD)
+			return transpose();
+
+		final BitMatrix T = new BitMatrix(getNumRows(), getNumCols());
+		// Create the word views before handing them to other threads
+		words();
+		T.words();
+		final int colTiles = (getNumCols() + 63) / 64;
+		final int rowTiles = (getNumRows() + 63) / 64;
+
+		// Tiles write disjoint bytes of T, so we can split along whichever dimension has more of them.
+		if (colTiles >= rowTiles) {
+			ParallelUtils.forRange(pool, 0, colTiles, PARALLEL_THRESHOLD / (8 * numRows) + 1, new ParallelUtils.RangeBody() {
+				@Override
+				public void run(int from, int to) {
+					transposeTiles(T, from, to, 0, rowTiles);
+				}
+			});
+		} else {
+			ParallelUtils.forRange(pool, 0, rowTiles, PARALLEL_THRESHOLD / (8 * numCols) + 1, new ParallelUtils.RangeBody() {
+				@Override
+				public void run(int from, int to) {
+					transposeTiles(T, 0, colTiles, from, to);
+				}
+			});
+		}
 		return T;
 	}
+
+	/**
+	 * Transpose the tiles [colTileStart, colTileEnd) x [rowTileStart, rowTileEnd) of this matrix
+	 * (each tile spans 64 columns and 64 rows) into the corresponding positions of T.
+	 * T must be a zeroed, packed matrix of size numRows x numCols.
+	 */
+	final void transposeTiles(BitMatrix T, int colTileStart, int colTileEnd, int rowTileStart, int rowTileEnd) {
+		long[] tile = new long[64];
+		int srcUsed = getUsedBytesPerRow();
+		int dstUsed = T.getUsedBytesPerRow();
+		ByteBuffer src = words();
+		ByteBuffer dst = T.words();
+
+		for (int colTile = colTileStart; colTile < colTileEnd; ++colTile) {
+			int colByte = colTile * 8;
+			int srcBytes = Math.min(8, srcUsed - colByte);
+			int tileCols = Math.min(64, numCols - colTile * 64);
+			long colMask = tileCols == 64 ? -1L : (1L << tileCols) - 1;
+
+			for (int rowTile = rowTileStart; rowTile < rowTileEnd; ++rowTile) {
+				int tileRows = Math.min(64, numRows - rowTile * 64);
+				int rowByte = rowTile * 8;
+				int dstBytes = Math.min(8, dstUsed - rowByte);
+
+				for (int r = 0; r < tileRows; ++r) {
+					int pos = getRowIndex(rowTile * 64 + r) + colByte;
+					tile[r] = (srcBytes == 8 ? src.getLong(pos) : loadWord(bits, pos, srcBytes)) & colMask;
+				}
+				for (int r = tileRows; r < 64; ++r)
+					tile[r] = 0;
+
+				transpose64(tile);
+
+				for (int c = 0; c < tileCols; ++c) {
+					int pos = T.getRowIndex(colTile * 64 + c) + rowByte;
+					if (dstBytes == 8)
+						dst.putLong(pos, tile[c]);
+					else
+						storeWord(T.bits, pos, dstBytes, tile[c]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transpose a 64x64 bit matrix held in 64 words (bit j of word i is the element at row i, column j),
+	 * using Eklundh's recursive block swaps: swap the off-diagonal 32x32 blocks, then the off-diagonal 16x16
+	 * blocks within each quadrant, and so on down to single bits.
+	 */
+	static void transpose64(long[] a) {
+		int j = 32;
+		long m = 0x00000000FFFFFFFFL;
+		for (; j != 0; j >>= 1, m ^= (m << j)) {
+			for (int k = 0; k < 64; k = (k + j + 1) & ~j) {
+				long t = ((a[k] >>> j) ^ a[k + j]) & m;
+				a[k + j] ^= t;
+				a[k] ^= t << j;
+			}
+		}
+	}
+
+	/**
+	 * Read up to 8 bytes (LSB first) starting at pos as a single word.
+	 */
+	static long loadWord(byte[] arr, int pos, int len) {
+		long word = 0;
+		for (int i = len - 1; i >= 0; --i)
+			word = (word << 8) | (arr[pos + i] & 0xff);
+		return word;
+	}
+
+	/**
+	 * Write the len least significant bytes of word (LSB first) starting at pos.
+	 */
+	static void storeWord(byte[] arr, int pos, int len, long word) {
+		for (int i = 0; i < len; ++i) {
+			arr[pos + i] = (byte) word;
+			word >>>= 8;
+		}
+	}
 	
 
+	/**
+	 * Read a matrix (in packed format).
+	 * If this matrix owns its backing array (i.e., it doesn't share it with another matrix) and the array
+	 * is large enough, the array is reused; otherwise a new one is allocated. This makes it cheap to read
+	 * many matrices into the same object (e.g., using {@link SendableInput#readObject(Object)}), but
+	 * note that arrays previously returned by {@link #getBackingArray()} will be overwritten.
+	 */
 	@Override
 	public void readFrom(SendableInput in) throws IOException {
-        internalCopy();
-
 		numCols = in.readInt();
 		numRows = in.readInt();
-		allocate();
-		in.readFully(bits);
+
+		int rowLen = getUsedBytesPerRow();
+		int len = rowLen * numRows;
+		if (copyOnWrite || bits == null || bits.length < len) {
+			bits = new byte[len];
+			copyOnWrite = false;
+		}
+		rowOffs = 0;
+		bytesPerRow = rowLen;
+		in.readFully(bits, 0, len);
+
+		// The sender's padding bits may not be zero.
+		zeroPadded = false;
+		zeroPad();
 	}
 
 	@Override
 	public void writeTo(SendableOutput out) throws IOException {
 		out.writeInt(numCols);
 		out.writeInt(numRows);
-		if (bytesPerRow > getUsedBytesPerRow()) {
+		int used = getUsedBytesPerRow();
+		if (bytesPerRow > used && used < WRITE_BUFFER_SIZE) {
 			// There are extra padding bytes at the end of each row.
-			// We'll write out the rows without them
+			// We gather as many rows as fit in a buffer (without the padding) and write them together.
+			byte[] buf = writeBuffer.get();
+			int rowsPerWrite = buf.length / used;
+			for (int i = 0; i < numRows; i += rowsPerWrite) {
+				int n = Math.min(rowsPerWrite, numRows - i);
+				for (int j = 0; j < n; ++j)
+					System.arraycopy(bits, getRowIndex(i + j), buf, j * used, used);
+				out.write(buf, 0, n * used);
+			}
+		} else if (bytesPerRow > used) {
+			// Rows are long enough to be written one at a time.
 			for (int i = 0; i < numRows; ++i) {
-				out.write(bits, getRowIndex(i), getUsedBytesPerRow());
+				out.write(bits, getRowIndex(i), used);
 			}
 		} else {
 			// We can write the entire buffer directly.
@@ -995,11 +1258,42 @@ public final class BitMatrix implements Sendable, Cloneable {
 		}
 	}
 
+    /**
+     * Count the number of set bits in a row.
+     * @param row the row index.
+     */
+    public final int bitCount(int row) {
+        int used = getUsedBytesPerRow();
+        int partialByte = getNumCols() % 8;
+        if (partialByte != 0)
+            --used;
+
+        ByteBuffer w = words();
+        int start = getRowIndex(row);
+        int count = 0;
+        int i = 0;
+        for (; i + 8 <= used; i += 8)
+            count += Long.bitCount(w.getLong(start + i));
+        for (; i < used; ++i)
+            count += Integer.bitCount(bits[start + i] & 0xff);
+        if (partialByte != 0)
+            count += Integer.bitCount(bits[start + used] & ((1 << partialByte) - 1));
+        return count;
+    }
+
+    /**
+     * Count the number of set bits in the entire matrix.
+     */
+    public final int bitCount() {
+        int count = 0;
+        for (int row = 0; row < numRows; ++row)
+            count += bitCount(row);
+        return count;
+    }
+
     /**
      * Test equality. Two bitmatrices are considered equal if their bits are equal (regardless of the contents
      * of the backing array outside the "real" data.
-     *
-     * This is an inefficient test at the moment that works bit-by-bit.
      * @param other
      */
     @Override
@@ -1012,10 +1306,22 @@ public final class BitMatrix implements Sendable, Cloneable {
         if (numRows != b.numRows || numCols != b.numCols)
             return false;
 
-        for (int row = 0; row < numRows; ++row)
-            for (int col = 0; col < numCols; ++col)
-                if (getBit(col, row) != b.getBit(col, row))
-                    return false;
+        int used = getUsedBytesPerRow();
+        int partialByte = getNumCols() % 8;
+        if (partialByte != 0)
+            --used;
+        int bitMask = (1 << partialByte) - 1;
+
+        ByteBuffer wordsA = words();
+        ByteBuffer wordsB = b.words();
+        for (int row = 0; row < numRows; ++row) {
+            int startA = getRowIndex(row);
+            int startB = b.getRowIndex(row);
+            if (!equalBytes(wordsA, startA, wordsB, startB, used))
+                return false;
+            if (partialByte != 0 && ((bits[startA + used] ^ b.bits[startB + used]) & bitMask) != 0)
+                return false;
+        }
 
         return true;
     }
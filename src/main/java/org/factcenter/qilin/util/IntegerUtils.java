@@ -20,4 +20,69 @@ public class IntegerUtils {
 		} while (r.compareTo(n) >= 0);
 		return r;
 	}
+
+	/**
+	 * Return count uniformly chosen integers between 0 and n-1.
+	 * The random bytes are drawn in a few large blocks rather than one call per integer
+	 * (which matters for synchronized generators such as {@link java.security.SecureRandom}).
+	 */
+	public static BigInteger[] getRandomIntegers(BigInteger n, int count, Random rand) {
+		int bits = n.bitLength();
+		int len = (bits + 7) / 8;
+		int topMask = 0xff >>> (8 * len - bits);
+		BigInteger[] result = new BigInteger[count];
+		byte[] encoded = new byte[len];
+		int filled = 0;
+		while (filled < count) {
+			byte[] block = new byte[(count - filled) * len];
+			rand.nextBytes(block);
+			for (int off = 0; off < block.length; off += len) {
+				System.arraycopy(block, off, encoded, 0, len);
+				encoded[0] &= topMask;
+				BigInteger r = new BigInteger(1, encoded);
+				// Rejection sampling, as in getRandomInteger
+				if (r.compareTo(n) < 0)
+					result[filled++] = r;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the sum of the values modulo the modulus (the values are added as integers, and the sum is reduced once).
+	 */
+	public static BigInteger sumMod(Iterable<BigInteger> values, BigInteger modulus) {
+		BigInteger acc = BigInteger.ZERO;
+		for (BigInteger x : values)
+			acc = acc.add(x);
+		return acc.mod(modulus);
+	}
+
+	/**
+	 * Compute the Jacobi symbol (a/n). When n is prime, this is the Legendre symbol: 1 if a is a nonzero
+	 * quadratic residue mod n, -1 if it is a non-residue and 0 if n divides a. This is much cheaper than
+	 * computing a^((n-1)/2) mod n.
+	 * @param n must be odd and positive.
+	 */
+	public static int jacobi(BigInteger a, BigInteger n) {
+		if (n.signum() <= 0 || !n.testBit(0))
+			throw new IllegalArgumentException("Jacobi symbol is only defined for odd positive n");
+		a = a.mod(n);
+		int t = 1;
+		while (a.signum() != 0) {
+			// (2/n) = -1 iff n = 3 or 5 mod 8
+			int z = a.getLowestSetBit();
+			a = a.shiftRight(z);
+			int n8 = n.intValue() & 7;
+			if ((z & 1) == 1 && (n8 == 3 || n8 == 5))
+				t = -t;
+			// Quadratic reciprocity: (a/n) = -(n/a) iff a = n = 3 mod 4
+			if ((a.intValue() & 3) == 3 && (n8 & 3) == 3)
+				t = -t;
+			BigInteger tmp = a;
+			a = n.mod(tmp);
+			n = tmp;
+		}
+		return n.equals(BigInteger.ONE) ? t : 0;
+	}
 }
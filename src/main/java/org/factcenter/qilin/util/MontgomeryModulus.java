@@ -0,0 +1,254 @@
+package org.factcenter.qilin.util;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Modular arithmetic with a fixed odd modulus p, using Montgomery multiplication on arrays of 32-bit limbs.
+ * <p>
+ * An element x is represented in Montgomery form as xR mod p, where R=2^(32n) and n is the number of limbs
+ * of p. The limbs are stored least-significant first in an int array of length n.
+ * Multiplying two elements in Montgomery form (see {@link #multiply(int[], int[], int[], int[])}) requires
+ * no division and no allocation, so long chains of products (e.g., products of many elements, or table-based
+ * exponentiation) are much cheaper than with {@link BigInteger#multiply(BigInteger)} and {@link BigInteger#mod(BigInteger)}.
+ * Converting to Montgomery form costs a modular reduction, so it only pays off when several multiplications are
+ * done per conversion.
+ * <p>
+ * Instances are immutable and can be shared between threads; the scratch buffers passed to the arithmetic
+ * methods (and {@link Accumulator} instances) cannot.
+ */
+public class MontgomeryModulus {
+	final static long MASK = 0xffffffffL;
+
+	final BigInteger modulus;
+
+	/**
+	 * Number of limbs
+	 */
+	final int n;
+
+	/**
+	 * The modulus, in limbs.
+	 */
+	final int[] p;
+
+	/**
+	 * -p^(-1) mod 2^32
+	 */
+	final int pInv;
+
+	/**
+	 * R mod p (1 in Montgomery form).
+	 */
+	final int[] one;
+
+	public MontgomeryModulus(BigInteger modulus) {
+		if (modulus.signum() <= 0 || !modulus.testBit(0))
+			throw new IllegalArgumentException("Montgomery modulus must be odd and positive");
+		this.modulus = modulus;
+		this.n = (modulus.bitLength() + 31) / 32;
+		this.p = toLimbs(modulus);
+		BigInteger word = BigInteger.ONE.shiftLeft(32);
+		this.pInv = modulus.mod(word).modInverse(word).negate().intValue();
+		this.one = toLimbs(BigInteger.ONE.shiftLeft(32 * n).mod(modulus));
+	}
+
+	public BigInteger getModulus() {
+		return modulus;
+	}
+
+	/**
+	 * @return the number of limbs in an element.
+	 */
+	public int getNumLimbs() {
+		return n;
+	}
+
+	/**
+	 * Allocate a scratch buffer for {@link #multiply(int[], int[], int[], int[])}.
+	 */
+	public int[] newScratch() {
+		return new int[n + 1];
+	}
+
+	/**
+	 * Convert a non-negative integer smaller than 2^(32n) to limbs (without reduction).
+	 */
+	int[] toLimbs(BigInteger x) {
+		int[] out = new int[n];
+		byte[] bytes = x.toByteArray();
+		for (int i = 0; i < bytes.length; ++i) {
+			int pos = bytes.length - 1 - i;
+			if (i / 4 < n)
+				out[i / 4] |= (bytes[pos] & 0xff) << (8 * (i % 4));
+		}
+		return out;
+	}
+
+	/**
+	 * Return x mod p in Montgomery form.
+	 */
+	public int[] toMontgomery(BigInteger x) {
+		return toLimbs(x.shiftLeft(32 * n).mod(modulus));
+	}
+
+	/**
+	 * Return x in Montgomery form (1 is R mod p).
+	 */
+	public int[] one() {
+		return one.clone();
+	}
+
+	/**
+	 * Convert an element from Montgomery form to a BigInteger.
+	 */
+	public BigInteger fromMontgomery(int[] a) {
+		int[] plainOne = new int[n];
+		plainOne[0] = 1;
+		int[] out = new int[n];
+		multiply(a, plainOne, out, newScratch());
+		return limbsToBigInteger(out);
+	}
+
+	BigInteger limbsToBigInteger(int[] a) {
+		byte[] bytes = new byte[4 * n + 1];
+		for (int i = 0; i < n; ++i) {
+			int pos = bytes.length - 1 - 4 * i;
+			bytes[pos] = (byte) a[i];
+			bytes[pos - 1] = (byte) (a[i] >>> 8);
+			bytes[pos - 2] = (byte) (a[i] >>> 16);
+			bytes[pos - 3] = (byte) (a[i] >>> 24);
+		}
+		return new BigInteger(bytes);
+	}
+
+	/**
+	 * Montgomery multiplication (CIOS): out = a*b*R^(-1) mod p.
+	 * a and b must be smaller than p. out may be the same array as a or b.
+	 * @param scratch a buffer of n+1 limbs (see {@link #newScratch()})
+	 */
+	public void multiply(int[] a, int[] b, int[] out, int[] scratch) {
+		final int[] t = scratch;
+		final int[] p = this.p;
+		final int n = this.n;
+		for (int j = 0; j <= n; ++j)
+			t[j] = 0;
+
+		for (int i = 0; i < n; ++i) {
+			// t = (t + a[i]*b + m*p) / 2^32, where m is chosen so that the division is exact.
+			// The two products are accumulated with separate carries, since their sum may not fit in 64 bits.
+			long ai = a[i] & MASK;
+			long s1 = (t[0] & MASK) + ai * (b[0] & MASK);
+			long c1 = s1 >>> 32;
+			long m = (((int) s1) * pInv) & MASK;
+			long s2 = (s1 & MASK) + m * (p[0] & MASK);
+			long c2 = s2 >>> 32;
+			for (int j = 1; j < n; ++j) {
+				s1 = (t[j] & MASK) + ai * (b[j] & MASK) + c1;
+				c1 = s1 >>> 32;
+				s2 = (s1 & MASK) + m * (p[j] & MASK) + c2;
+				t[j - 1] = (int) s2;
+				c2 = s2 >>> 32;
+			}
+			s1 = (t[n] & MASK) + c1;
+			s2 = (s1 & MASK) + c2;
+			t[n - 1] = (int) s2;
+			t[n] = (int) ((s1 >>> 32) + (s2 >>> 32));
+		}
+
+		// t < 2p; subtract p if necessary.
+		if (t[n] != 0 || !lessThanModulus(t)) {
+			long borrow = 0;
+			for (int j = 0; j < n; ++j) {
+				long d = (t[j] & MASK) - (p[j] & MASK) - borrow;
+				out[j] = (int) d;
+				borrow = (d >>> 63);
+			}
+		} else {
+			System.arraycopy(t, 0, out, 0, n);
+		}
+	}
+
+	/**
+	 * Return true if the limbs are smaller than the modulus (as are those of every element in Montgomery form).
+	 */
+	public boolean isReduced(int[] a) {
+		return a.length == n && lessThanModulus(a);
+	}
+
+	boolean lessThanModulus(int[] t) {
+		for (int j = n - 1; j >= 0; --j) {
+			int cmp = Integer.compare(t[j] ^ Integer.MIN_VALUE, p[j] ^ Integer.MIN_VALUE);
+			if (cmp != 0)
+				return cmp < 0;
+		}
+		return false;
+	}
+
+	/**
+	 * A mutable product of elements.
+	 * The product is kept as P*R^e mod p for a tracked exponent e, so that multiplying by a plain
+	 * element costs a single Montgomery multiplication (which divides by R) and no conversion; the power
+	 * of R is only corrected once, in {@link #get()}.
+	 * Not thread-safe.
+	 */
+	public class Accumulator {
+		final int[] acc;
+		final int[] scratch;
+
+		/**
+		 * acc = product * R^rExp mod p
+		 */
+		long rExp;
+
+		Accumulator() {
+			acc = one();
+			scratch = newScratch();
+			rExp = 1;
+		}
+
+		/**
+		 * Multiply the accumulator by x (which is reduced modulo p if it is not in the range [0,p)).
+		 */
+		public Accumulator multiply(BigInteger x) {
+			if (x.signum() < 0 || x.compareTo(modulus) >= 0)
+				x = x.mod(modulus);
+			MontgomeryModulus.this.multiply(acc, toLimbs(x), acc, scratch);
+			--rExp;
+			return this;
+		}
+
+		/**
+		 * Multiply the accumulator by an element in Montgomery form.
+		 */
+		public Accumulator multiplyMontgomery(int[] x) {
+			MontgomeryModulus.this.multiply(acc, x, acc, scratch);
+			return this;
+		}
+
+		/**
+		 * @return the product (in the range [0,p)).
+		 */
+		public BigInteger get() {
+			if (rExp == 1)
+				return fromMontgomery(acc);
+			// acc * R^(-rExp) = acc * 2^(32n * -rExp), with rExp <= 0
+			BigInteger correction = BigInteger.valueOf(2).modPow(BigInteger.valueOf(-rExp * 32 * n), modulus);
+			return limbsToBigInteger(acc).multiply(correction).mod(modulus);
+		}
+	}
+
+	public Accumulator newAccumulator() {
+		return new Accumulator();
+	}
+
+	/**
+	 * Compute the product of the elements modulo p.
+	 */
+	public BigInteger product(List<BigInteger> elements) {
+		Accumulator acc = newAccumulator();
+		for (BigInteger x : elements)
+			acc.multiply(x);
+		return acc.get();
+	}
+}
@@ -0,0 +1,158 @@
+package org.factcenter.qilin.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A matrix of bits stored outside the Java heap, in direct {@link ByteBuffer}s.
+ * Rows are packed as in a {@link BitMatrix} (byte-aligned, LSB first within each byte). The rows are split into
+ * chunks of whole rows, each chunk a separate direct buffer, so the matrix can be larger than a single buffer
+ * and memory can be released as rows are consumed.
+ *
+ * The matrix is intended for large buffers of precomputed values that are consumed from the front:
+ * {@link #removeRows(int)} copies a prefix of the rows back to a (small) heap {@link BitMatrix} and drops
+ * the chunks that are no longer needed. Since the garbage collector only sees the (tiny) buffer objects,
+ * holding a multi-gigabyte matrix costs nothing during collections.
+ *
+ * This class is not thread-safe.
+ */
+public final class OffHeapBitMatrix {
+	/**
+	 * Default (maximum) size of a single direct buffer.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 26;
+
+	/**
+	 * Number of columns.
+	 */
+	final int numCols;
+
+	/**
+	 * Number of bytes in each (packed) row.
+	 */
+	final int bytesPerRow;
+
+	/**
+	 * Number of rows stored in each chunk.
+	 */
+	final int rowsPerChunk;
+
+	/**
+	 * The direct buffers holding the rows. Chunks that were entirely removed are set to null.
+	 */
+	final ByteBuffer[] chunks;
+
+	/**
+	 * Index (counting from the first row originally stored) of the current first row.
+	 */
+	int firstRow;
+
+	/**
+	 * Number of rows remaining in the matrix.
+	 */
+	int numRows;
+
+	/**
+	 * Copy a heap matrix to off-heap storage, using the default chunk size.
+	 * @param src the matrix to copy.
+	 */
+	public OffHeapBitMatrix(BitMatrix src) {
+		this(src, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Copy a heap matrix to off-heap storage.
+	 * @param src the matrix to copy.
+	 * @param chunkSize maximum size (in bytes) of each direct buffer; chunks always contain at least one row.
+	 */
+	public OffHeapBitMatrix(BitMatrix src, int chunkSize) {
+		numCols = src.getNumCols();
+		numRows = src.getNumRows();
+		bytesPerRow = src.getUsedBytesPerRow();
+		rowsPerChunk = Math.max(1, chunkSize / Math.max(1, bytesPerRow));
+
+		int numChunks = (numRows + rowsPerChunk - 1) / rowsPerChunk;
+		chunks = new ByteBuffer[numChunks];
+
+		byte[] packed = src.getPackedBits(false);
+		for (int i = 0; i < numChunks; ++i) {
+			int rows = Math.min(rowsPerChunk, numRows - i * rowsPerChunk);
+			chunks[i] = ByteBuffer.allocateDirect(rows * bytesPerRow);
+			chunks[i].put(packed, i * rowsPerChunk * bytesPerRow, rows * bytesPerRow);
+		}
+	}
+
+	public final int getNumRows() {
+		return numRows;
+	}
+
+	public final int getNumCols() {
+		return numCols;
+	}
+
+	/**
+	 * Return the bit at position (col, row) in the matrix.
+	 * @param col the column index (zero based)
+	 * @param row the row index (zero based)
+	 * @return the bit (0 or 1)
+	 */
+	public final int getBit(int col, int row) {
+		assert(row < numRows && col < numCols);
+		int absRow = firstRow + row;
+		ByteBuffer chunk = chunks[absRow / rowsPerChunk];
+		int pos = (absRow % rowsPerChunk) * bytesPerRow + col / 8;
+		return (chunk.get(pos) >>> (col % 8)) & 1;
+	}
+
+	/**
+	 * Copy a range of rows to a new (packed) heap matrix.
+	 * @param rowStart first row to copy
+	 * @param num number of rows to copy
+	 */
+	public BitMatrix getRows(int rowStart, int num) {
+		if (rowStart + num > numRows)
+			throw new RuntimeException("Invalid row range (numRows="+numRows+",rowStart="+rowStart+",num="+num+")");
+
+		BitMatrix dst = new BitMatrix(numCols, num);
+		byte[] dstBits = dst.getBackingArray();
+
+		int absRow = firstRow + rowStart;
+		int dstPos = 0;
+		while (num > 0) {
+			int chunkIdx = absRow / rowsPerChunk;
+			int chunkRow = absRow % rowsPerChunk;
+			int rows = Math.min(num, rowsPerChunk - chunkRow);
+
+			ByteBuffer chunk = chunks[chunkIdx].duplicate();
+			chunk.position(chunkRow * bytesPerRow);
+			chunk.get(dstBits, dstPos, rows * bytesPerRow);
+
+			dstPos += rows * bytesPerRow;
+			absRow += rows;
+			num -= rows;
+		}
+		return dst;
+	}
+
+	/**
+	 * Remove the first num rows from this matrix and return them as a heap matrix.
+	 * Chunks whose rows were all removed are released.
+	 * @param num number of rows to remove.
+	 */
+	public BitMatrix removeRows(int num) {
+		BitMatrix retval = getRows(0, num);
+
+		firstRow += num;
+		numRows -= num;
+		for (int i = 0; i < firstRow / rowsPerChunk; ++i)
+			chunks[i] = null;
+
+		return retval;
+	}
+
+	/**
+	 * Copy the entire (remaining) matrix to the heap.
+	 */
+	public BitMatrix toBitMatrix() {
+		return getRows(0, numRows);
+	}
+}
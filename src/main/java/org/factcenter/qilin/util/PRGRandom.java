@@ -46,9 +46,11 @@ public class PRGRandom extends Random {
 	@Override
 	protected int next(int bits) {
 		byte[] nextBits = new byte[4];
-		prg.getPRGBytes(nextBits, 0, 3);
+		prg.getPRGBytes(nextBits, 0, 4);
 
-		return nextBits[0] | ((nextBits[1] << 8) & 0xff00) | ((nextBits[2] << 16) & 0xff0000) | ((nextBits[3] << 24) & 0xff000000);
+		int val = (nextBits[0] & 0xff) | ((nextBits[1] << 8) & 0xff00) | ((nextBits[2] << 16) & 0xff0000) | ((nextBits[3] << 24) & 0xff000000);
+		// Random requires the unused high-order bits to be zero.
+		return val >>> (32 - bits);
 	}
 
 	@Override
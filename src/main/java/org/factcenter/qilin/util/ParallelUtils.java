@@ -0,0 +1,186 @@
+package org.factcenter.qilin.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Utilities for splitting work over index ranges on a {@link ForkJoinPool},
+ * for parallel reductions, and for running randomized searches in parallel.
+ */
+public class ParallelUtils {
+	/**
+	 * Shared pool, created on first use.
+	 */
+	private static ForkJoinPool defaultPool;
+
+	/**
+	 * Return a shared pool with one worker per available processor.
+	 * (The workers are daemon threads, so the pool does not have to be shut down.)
+	 */
+	public static synchronized ForkJoinPool getDefaultPool() {
+		if (defaultPool == null)
+			defaultPool = new ForkJoinPool();
+		return defaultPool;
+	}
+
+	/**
+	 * The body of a parallel loop: processes the indices in [from, to).
+	 */
+	public interface RangeBody {
+		public void run(int from, int to);
+	}
+
+	/**
+	 * Task that recursively halves its range until it is at most {@link #grain} long.
+	 */
+	@SuppressWarnings("serial")
+	static class RangeAction extends RecursiveAction {
+		final int from, to, grain;
+		final RangeBody body;
+
+		RangeAction(int from, int to, int grain, RangeBody body) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				body.run(from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeAction(from, mid, grain, body), new RangeAction(mid, to, grain, body));
+		}
+	}
+
+	/**
+	 * Run body over the range [from, to), split into subranges of at most grain indices
+	 * that are executed in parallel on pool. If pool is null or the range is no longer than grain,
+	 * body is run directly in the calling thread.
+	 * Returns when the entire range has been processed; a runtime exception thrown by body is rethrown.
+	 */
+	public static void forRange(ForkJoinPool pool, int from, int to, int grain, RangeBody body) {
+		if (grain < 1)
+			grain = 1;
+		if (pool == null || to - from <= grain) {
+			if (to > from)
+				body.run(from, to);
+			return;
+		}
+		pool.invoke(new RangeAction(from, to, grain, body));
+	}
+
+	/**
+	 * An associative operation on a list of values (e.g., a sum).
+	 */
+	public interface Reduction<T> {
+		/**
+		 * Combine the values into a single value.
+		 */
+		public T reduce(List<T> values);
+	}
+
+	/**
+	 * Reduce a list in parallel on pool: the list is split into chunks of at most grain elements, each chunk is
+	 * reduced by a separate task, and the results of the chunks are then reduced in the calling thread.
+	 * If pool is null or the list is no longer than grain, the whole list is reduced in the calling thread.
+	 * A runtime exception thrown by the reduction is rethrown.
+	 */
+	public static <T> T reduce(ForkJoinPool pool, List<T> values, int grain, final Reduction<T> reduction) {
+		if (grain < 1)
+			grain = 1;
+		if (pool == null || values.size() <= grain)
+			return reduction.reduce(values);
+		final List<T> elements = values instanceof RandomAccess ? values : new ArrayList<T>(values);
+		final int chunkSize = grain;
+		int numChunks = (elements.size() + chunkSize - 1) / chunkSize;
+		@SuppressWarnings("unchecked")
+		final T[] partial = (T[]) new Object[numChunks];
+		forRange(pool, 0, numChunks, 1, new RangeBody() {
+			@Override
+			public void run(int from, int to) {
+				for (int k = from; k < to; ++k)
+					partial[k] = reduction.reduce(elements.subList(k * chunkSize,
+							Math.min(elements.size(), (k + 1) * chunkSize)));
+			}
+		});
+		return reduction.reduce(Arrays.asList(partial));
+	}
+
+	/**
+	 * A randomized search (e.g., for a prime), made of independent attempts.
+	 */
+	public interface Search<T> {
+		/**
+		 * Make a single attempt.
+		 * @return the result, or null if this attempt failed.
+		 */
+		public T attempt();
+	}
+
+	/**
+	 * Run the searches in parallel on pool (one task per search) until one of them succeeds, and return its result.
+	 * The other searches stop after their current attempt. If pool is null, the first search is run in the
+	 * calling thread. A runtime exception thrown by a search is rethrown.
+	 */
+	public static <T> T findAny(ForkJoinPool pool, List<? extends Search<T>> searches) {
+		if (pool == null || searches.size() == 1) {
+			Search<T> search = searches.get(0);
+			T result;
+			do {
+				result = search.attempt();
+			} while (result == null);
+			return result;
+		}
+
+		final AtomicReference<T> found = new AtomicReference<T>();
+		final AtomicBoolean failed = new AtomicBoolean();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(searches.size());
+		for (final Search<T> search : searches) {
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					try {
+						while (found.get() == null && !failed.get()) {
+							T result = search.attempt();
+							if (result != null)
+								found.compareAndSet(null, result);
+						}
+					} catch (RuntimeException e) {
+						// Stop the other searches
+						failed.set(true);
+						throw e;
+					}
+					return null;
+				}
+			});
+		}
+
+		List<Future<Void>> futures = pool.invokeAll(tasks);
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return found.get();
+	}
+}
@@ -0,0 +1,152 @@
+package org.factcenter.qilin.util;
+
+import org.factcenter.qilin.primitives.PrecomputedMultiplier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Saving and loading the tables of {@link PrecomputedMultiplier}s.
+ * <p>
+ * A saved table consists of a header (a magic number, the format version and the length of the table),
+ * the table itself (see {@link PrecomputedMultiplier#exportTable(ByteBuffer)}) and a SHA-256 digest of the table.
+ * All integers are big-endian. Files are memory-mapped, so loading a table costs little more than
+ * copying it into the multiplier.
+ */
+public class PrecomputedTables {
+	/**
+	 * "QLPT"
+	 */
+	public final static int MAGIC = 0x514c5054;
+
+	/**
+	 * Version of the format (both of the header and of the tables themselves).
+	 */
+	public final static int FORMAT_VERSION = 1;
+
+	final static int HEADER_SIZE = 12;
+	final static String DIGEST_ALGORITHM = "SHA-256";
+	final static int DIGEST_SIZE = 32;
+
+	static MessageDigest getDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Write a length-prefixed byte array (for use by implementations of {@link PrecomputedMultiplier#exportTable(ByteBuffer)}).
+	 */
+	public static void putBytes(ByteBuffer out, byte[] bytes) {
+		out.putInt(bytes.length);
+		out.put(bytes);
+	}
+
+	/**
+	 * Read a byte array written by {@link #putBytes(ByteBuffer, byte[])}.
+	 */
+	public static byte[] getBytes(ByteBuffer in) throws IOException {
+		int len = in.getInt();
+		if (len < 0 || len > in.remaining())
+			throw new IOException("Invalid array length " + len);
+		byte[] bytes = new byte[len];
+		in.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Return the number of bytes written by {@link #write(PrecomputedMultiplier, ByteBuffer)}.
+	 */
+	public static int getSize(PrecomputedMultiplier<?> multiplier) {
+		return HEADER_SIZE + multiplier.getExportedTableSize() + DIGEST_SIZE;
+	}
+
+	/**
+	 * Write the multiplier's table (with a header and digest) at the buffer's position.
+	 */
+	public static void write(PrecomputedMultiplier<?> multiplier, ByteBuffer out) {
+		int tableSize = multiplier.getExportedTableSize();
+		out.putInt(MAGIC);
+		out.putInt(FORMAT_VERSION);
+		out.putInt(tableSize);
+
+		ByteBuffer table = out.slice();
+		multiplier.exportTable(table);
+		if (table.position() != tableSize)
+			throw new IllegalStateException("Exported table size (" + table.position()
+					+ ") differs from reported size (" + tableSize + ")");
+		table.flip();
+		MessageDigest digest = getDigest();
+		digest.update(table);
+		out.position(out.position() + tableSize);
+		out.put(digest.digest());
+	}
+
+	/**
+	 * Read a table written by {@link #write(PrecomputedMultiplier, ByteBuffer)} into the multiplier.
+	 * @throws IOException if the header or digest are invalid, or the table does not match the multiplier.
+	 */
+	public static void read(PrecomputedMultiplier<?> multiplier, ByteBuffer in) throws IOException {
+		if (in.remaining() < HEADER_SIZE + DIGEST_SIZE)
+			throw new IOException("Table is truncated");
+		if (in.getInt() != MAGIC)
+			throw new IOException("Not a precomputed table");
+		int version = in.getInt();
+		if (version != FORMAT_VERSION)
+			throw new IOException("Unsupported table format version " + version);
+		int tableSize = in.getInt();
+		if (tableSize < 0 || tableSize > in.remaining() - DIGEST_SIZE)
+			throw new IOException("Table is truncated");
+
+		ByteBuffer table = in.slice();
+		table.limit(tableSize);
+		MessageDigest digest = getDigest();
+		digest.update(table.duplicate());
+		in.position(in.position() + tableSize);
+		byte[] expected = new byte[DIGEST_SIZE];
+		in.get(expected);
+		if (!Arrays.equals(expected, digest.digest()))
+			throw new IOException("Table digest mismatch");
+
+		multiplier.importTable(table);
+	}
+
+	/**
+	 * Save the multiplier's table to a file (which is overwritten).
+	 */
+	public static void save(PrecomputedMultiplier<?> multiplier, File file) throws IOException {
+		int size = getSize(multiplier);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			MappedByteBuffer out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			write(multiplier, out);
+			out.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Load a table saved by {@link #save(PrecomputedMultiplier, File)} into the multiplier.
+	 * @throws IOException if the file can't be read or does not contain a valid table for the multiplier.
+	 */
+	public static void load(PrecomputedMultiplier<?> multiplier, File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			read(multiplier, in);
+		} finally {
+			raf.close();
+		}
+	}
+}
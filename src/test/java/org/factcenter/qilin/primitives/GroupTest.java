@@ -3,11 +3,15 @@ package org.factcenter.qilin.primitives;
 import org.factcenter.qilin.util.ByteEncoder;
 import org.factcenter.qilin.util.GenericsUtils;
 import org.factcenter.qilin.util.GlobalTestParams;
+import org.factcenter.qilin.util.ParallelUtils;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 
@@ -193,4 +197,129 @@ public abstract class GroupTest<G> implements GlobalTestParams {
         }
     }
 
+    /**
+     * Check that fixed-base multipliers (for the generator and for a random base) agree with
+     * {@link Group#multiply(Object, BigInteger)}, also after their tables are built.
+     */
+    @Test
+    public void testFixedBaseMultiplier() {
+        Group<G> g = getGroup();
+        if (!(g instanceof CyclicGroup))
+            return;
+        CyclicGroup<G> cg = (CyclicGroup<G>) g;
+        Random rand = getRand();
+        BigInteger ord = g.orderUpperBound();
+
+        G base = g.sample(rand);
+        FixedBaseMultiplier<G> genMul = cg.getFixedBaseMultiplier(cg.getGenerator());
+        FixedBaseMultiplier<G> baseMul = cg.getFixedBaseMultiplier(base);
+        assertTrue(GenericsUtils.deepEquals(base, baseMul.getBase()));
+
+        BigInteger[] special = { BigInteger.ZERO, BigInteger.ONE, ord.subtract(BigInteger.ONE), ord,
+                ord.add(BigInteger.ONE), ord.shiftLeft(3).add(BigInteger.TEN) };
+        for (int i = 0; i < CONFIDENCE + special.length; ++i) {
+            BigInteger k = i < special.length ? special[i] : new BigInteger(ord.bitLength() + 8, rand);
+            assertTrue("generator * " + k, GenericsUtils.deepEquals(g.multiply(cg.getGenerator(), k), genMul.multiply(k)));
+            assertTrue("base * " + k, GenericsUtils.deepEquals(g.multiply(base, k), baseMul.multiply(k)));
+        }
+    }
+
+    /**
+     * Check that multiExp agrees with repeated multiply and add, for both small numbers of bases
+     * and numbers large enough to use the bucket method.
+     */
+    @Test
+    public void testMultiExp() {
+        Group<G> g = getGroup();
+        Random rand = getRand();
+        BigInteger ord = g.orderUpperBound();
+        int[] sizes = { 0, 1, 2, 5, 40 };
+        for (int n : sizes) {
+            List<G> bases = new ArrayList<G>(n);
+            List<BigInteger> scalars = new ArrayList<BigInteger>(n);
+            G expected = g.zero();
+            for (int i = 0; i < n; ++i) {
+                G base = g.sample(rand);
+                BigInteger k;
+                switch (i % 5) {
+                    case 1: k = BigInteger.ZERO; break;
+                    case 2: k = BigInteger.ONE; break;
+                    case 3: k = new BigInteger(ord.bitLength() + 8, rand).negate(); break;
+                    default: k = new BigInteger(ord.bitLength(), rand);
+                }
+                bases.add(base);
+                scalars.add(k);
+                expected = g.add(expected, g.multiply(base, k));
+            }
+            assertTrue("multiExp of " + n + " bases", GenericsUtils.deepEquals(expected, g.multiExp(bases, scalars)));
+        }
+    }
+
+    /**
+     * Check that containsAll accepts collections of group elements, including batches large enough
+     * for batch checks.
+     */
+    @Test
+    public void testContainsAll() {
+        Group<G> g = getGroup();
+        Random rand = getRand();
+        int[] sizes = { 0, 1, 5, 200 };
+        for (int n : sizes) {
+            List<G> elements = new ArrayList<G>(n);
+            for (int i = 0; i < n; ++i)
+                elements.add(g.sample(rand));
+            if (n > 1)
+                elements.set(1, g.zero());
+            assertTrue("containsAll of " + n + " elements", g.containsAll(elements));
+        }
+    }
+
+    @Test
+    public void testNegateAll() {
+        Group<G> g = getGroup();
+        Random rand = getRand();
+        int[] sizes = { 0, 1, 5, 200 };
+        for (int n : sizes) {
+            List<G> elements = new ArrayList<G>(n);
+            for (int i = 0; i < n; ++i)
+                elements.add(g.sample(rand));
+            if (n > 1)
+                elements.set(1, g.zero());
+            List<G> negated = g.negateAll(elements);
+            assertEquals(n, negated.size());
+            for (int i = 0; i < n; ++i)
+                assertEquals(g.negate(elements.get(i)), negated.get(i));
+        }
+    }
+
+    /**
+     * Check that sum agrees with adding the elements one by one, also when the sum is split into chunks.
+     */
+    @Test
+    public void testSumAll() {
+        final Group<G> g = getGroup();
+        Random rand = getRand();
+        int[] sizes = { 0, 1, 5, 200 };
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int n : sizes) {
+                List<G> elements = new ArrayList<G>(n);
+                G expected = g.zero();
+                for (int i = 0; i < n; ++i) {
+                    elements.add(i == 1 ? g.zero() : g.sample(rand));
+                    expected = g.add(expected, elements.get(i));
+                }
+                assertEquals("sum of " + n + " elements", expected, g.sum(elements));
+                G parallel = ParallelUtils.reduce(pool, elements, 7, new ParallelUtils.Reduction<G>() {
+                    @Override
+                    public G reduce(List<G> values) {
+                        return g.sum(values);
+                    }
+                });
+                assertEquals("chunked sum of " + n + " elements", expected, parallel);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -7,7 +7,10 @@ import org.factcenter.qilin.util.IntegerUtils;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertTrue;
 
@@ -44,6 +47,40 @@ abstract public class HomomorphicTest<C,P,R> implements GlobalTestParams {
 		}
 	}
 	
+	@Test
+	public void testSumMany() {
+		Homomorphic<C,P,R> H = getHom();
+		Group<P> G = getPlaintextGroup();
+		Cipher.PK<C,P,R> PK = getCipherPK();
+		Random rand = getRand();
+
+		List<P> plains = new ArrayList<P>();
+		List<R> rnds = new ArrayList<R>();
+		List<C> ciphers = new ArrayList<C>();
+		P sum = G.zero();
+		for (int i = 0; i < CONFIDENCE; ++i) {
+			P plain = G.sample(rand);
+			R r = PK.getRandom(rand);
+			plains.add(plain);
+			rnds.add(r);
+			ciphers.add(PK.encrypt(plain, r));
+			sum = G.add(sum, plain);
+		}
+
+		C expected = PK.encrypt(sum, H.rndsum(plains, rnds));
+		assertTrue("Homomorphic sum of many doesn't work", GenericsUtils.deepEquals(expected, H.sum(ciphers)));
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertTrue("Parallel homomorphic sum doesn't work",
+					GenericsUtils.deepEquals(expected, H.sumParallel(ciphers, pool)));
+		} finally {
+			pool.shutdown();
+		}
+		// The implementation's default pool
+		assertTrue(GenericsUtils.deepEquals(expected, H.sumParallel(ciphers, null)));
+		assertTrue(GenericsUtils.deepEquals(ciphers.get(0), H.sum(ciphers.subList(0, 1))));
+	}
+
 	@Test
 	public void testNegation() {
 		Homomorphic<C,P,R> H = getHom();
@@ -105,4 +105,29 @@ public class AESBlockCipherPRGTest {
 
         test2(key, 16, 16, 10);
     }
+
+    /**
+     * A single long request must return the same stream as consecutive one-block requests.
+     */
+    @Test
+    public void AESMultiBlockRequest() throws Exception {
+        byte[] key = {1, 2, 3, 4, 5, 6, 7, 8, 10, 20, 30, 40, 50, 60, 70, 80};
+
+        byte[] expected = new byte[16 * 20];
+        aes.init(true, new KeyParameter(key));
+        byte[] ctrBytes = new byte[16];
+        for (int i = 0; i < 20; ++i) {
+            ctrBytes[0] = (byte) i;
+            aes.processBlock(ctrBytes, 0, expected, i * 16);
+        }
+
+        prg.setKey(key);
+        byte[] prgBytes = new byte[expected.length + 3];
+        prg.getPRGBytes(prgBytes, 3, 5);
+        prg.getPRGBytes(prgBytes, 8, expected.length - 5);
+
+        byte[] actual = new byte[expected.length];
+        System.arraycopy(prgBytes, 3, actual, 0, actual.length);
+        assertArrayEquals(expected, actual);
+    }
 }
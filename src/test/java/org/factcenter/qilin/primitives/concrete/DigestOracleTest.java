@@ -0,0 +1,101 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test {@link DigestOracle} against outputs computed directly with {@link MessageDigest}.
+ */
+public class DigestOracleTest {
+    Random rand = new Random(0);
+
+    static void updateInt(MessageDigest md, long n, int bytes) {
+        for (int i = 0; i < bytes; ++i)
+            md.update((byte) ((n >>> (i * 8)) & 0xff));
+    }
+
+    byte[] expectedHash(String alg, byte[] input, int outlen) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(alg);
+        byte[] out = new byte[outlen];
+        for (int i = 0, done = 0; done < outlen; ++i) {
+            md.update(input);
+            updateInt(md, i, 4);
+            byte[] d = md.digest();
+            int len = Math.min(d.length, outlen - done);
+            System.arraycopy(d, 0, out, done, len);
+            done += len;
+        }
+        return out;
+    }
+
+    byte[] expectedDigest(String alg, byte[] input, int index, int outlen) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(alg);
+        byte[] out = new byte[outlen];
+        for (int i = 0; i < outlen; ) {
+            md.update(input);
+            updateInt(md, index, 4);
+            md.update((byte) i);
+            byte[] d = md.digest();
+            int len = Math.min(d.length, outlen - i);
+            System.arraycopy(d, 0, out, i, len);
+            i += len;
+        }
+        return out;
+    }
+
+    @Test
+    public void testHashAndDigest() throws Exception {
+        for (String alg : new String[] {"SHA-256", "SHA-1", "SHA-512", "MD5"}) {
+            DigestOracle H = new DigestOracle(alg);
+            byte[] input = new byte[77];
+            rand.nextBytes(input);
+
+            assertArrayEquals(alg, expectedHash(alg, input, 100), H.hash(input, 100));
+
+            byte[] buf = new byte[110];
+            H.hash(input, 0, input.length, buf, 7, 100);
+            assertArrayEquals(alg, expectedHash(alg, input, 100), Arrays.copyOfRange(buf, 7, 107));
+
+            H.reset();
+            H.update(input, 0, 30);
+            H.update(input, 30, input.length - 30);
+            // Several indices on the same streamed input
+            for (int index : new int[] {0, 1, 12345}) {
+                assertArrayEquals(alg, expectedDigest(alg, input, index, 70), H.digest(index, 70));
+                H.digest(index, buf, 3, 70);
+                assertArrayEquals(alg, expectedDigest(alg, input, index, 70), Arrays.copyOfRange(buf, 3, 73));
+            }
+        }
+    }
+
+    @Test
+    public void testRandomStream() throws Exception {
+        byte[] input = new byte[20];
+        rand.nextBytes(input);
+
+        // Read past the end of the first hash
+        Random stream = new DigestOracle().getRandomStream(input);
+        Random mdStream = new DigestRandom(MessageDigest.getInstance("SHA-256"), input);
+        for (int i = 0; i < 50; ++i)
+            assertEquals(mdStream.nextInt(), stream.nextInt());
+
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        md.update(input);
+        updateInt(md, 1, 8);
+        byte[] second = md.digest();
+        // The second hash is used from bit 256 (nextInt reads 32 bits, LSB first)
+        stream = new DigestOracle().getRandomStream(input);
+        for (int i = 0; i < 8; ++i)
+            stream.nextInt();
+        int expected = 0;
+        for (int i = 0; i < 32; ++i)
+            expected |= ((second[i / 8] >>> (i % 8)) & 1) << i;
+        assertEquals(expected, stream.nextInt());
+    }
+}
@@ -0,0 +1,71 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.bouncycastle.jce.spec.ECParameterSpec;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.factcenter.qilin.util.GlobalTestParams;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the selection of curve implementations by {@link ECGroup#ECGroup(String)}.
+ */
+public class ECCurveImplementationTest implements GlobalTestParams {
+	Random rand = new Random(0);
+
+	/**
+	 * Construct a group for a named prime-field curve that uses generic ({@link ECCurve.Fp}) arithmetic.
+	 */
+	static ECGroup getGenericGroup(String name) {
+		ECParameterSpec spec = ECGroup.getParameterSpec(name);
+		ECCurve curve = spec.getCurve();
+		ECCurve generic = new ECCurve.Fp(curve.getField().getCharacteristic(), curve.getA().toBigInteger(),
+				curve.getB().toBigInteger(), spec.getN(), spec.getH());
+		ECPoint g = spec.getG().normalize();
+		return new ECGroup(new ECParameterSpec(generic,
+				generic.createPoint(g.getAffineXCoord().toBigInteger(), g.getAffineYCoord().toBigInteger()),
+				spec.getN(), spec.getH(), spec.getSeed()));
+	}
+
+	@Test
+	public void testCurveImplementation() {
+		assertEquals("SecP256R1Curve", new ECGroup("P-256").getCurveImplementation());
+		assertEquals("SecP256R1Curve", new ECGroup("secp256r1").getCurveImplementation());
+		assertEquals("SecP256R1Curve", new ECGroup("prime256v1").getCurveImplementation());
+		assertEquals("SecP256K1Curve", new ECGroup("secp256k1").getCurveImplementation());
+		assertEquals("Curve25519", new ECGroup("curve25519").getCurveImplementation());
+		// No optimized implementation
+		assertEquals("Fp", new ECGroup("brainpoolP256r1").getCurveImplementation());
+	}
+
+	/**
+	 * Check that the optimized and generic implementations of named curves give the same results and encodings.
+	 */
+	@Test
+	public void testImplementationsAgree() {
+		for (String name : new String[] { "P-256", "secp256k1", "curve25519" }) {
+			ECGroup fast = new ECGroup(name);
+			ECGroup generic = getGenericGroup(name);
+			assertEquals("Fp", generic.getCurveImplementation());
+			assertFalse(fast.getCurveImplementation().equals(generic.getCurveImplementation()));
+			assertArrayEquals(generic.encode(generic.getGenerator()), fast.encode(fast.getGenerator()));
+			assertEquals(generic.orderUpperBound(), fast.orderUpperBound());
+
+			for (int i = 0; i < CONFIDENCE; ++i) {
+				BigInteger k = new BigInteger(fast.orderUpperBound().bitLength() + 8, rand);
+				ECPoint x = fast.multiply(fast.getGenerator(), k);
+				ECPoint y = generic.multiply(generic.getGenerator(), k);
+				assertArrayEquals(generic.encode(y), fast.encode(x));
+
+				ECPoint z = fast.sample(rand);
+				ECPoint zGeneric = generic.decode(fast.encode(z));
+				assertArrayEquals(generic.encode(generic.add(y, zGeneric)), fast.encode(fast.add(x, z)));
+				assertArrayEquals(generic.encode(generic.multiply(zGeneric, k)), fast.encode(fast.multiply(z, k)));
+			}
+		}
+	}
+}
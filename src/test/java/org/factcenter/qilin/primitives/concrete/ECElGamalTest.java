@@ -62,4 +62,16 @@ public class ECElGamalTest extends ElGamalTest<ECPoint> {
 			return ECElGamalTest.getTestParameters();
 		}
 	}
+
+	@RunWith(Parameterized.class)
+	public static class Batch extends ElGamalTest.Batch<ECPoint> {
+		public Batch(ElGamalTest<ECPoint> globals) {
+			super(globals);
+		}
+
+		@Parameters
+		public static Collection<Object[]> getParameters() {
+			return ECElGamalTest.getTestParameters();
+		}
+	}
 }
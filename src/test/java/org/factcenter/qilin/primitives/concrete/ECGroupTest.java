@@ -3,19 +3,27 @@ package org.factcenter.qilin.primitives.concrete;
 import org.bouncycastle.jce.spec.ECParameterSpec;
 import org.bouncycastle.math.ec.ECCurve;
 import org.bouncycastle.math.ec.ECPoint;
+import org.factcenter.qilin.comm.SendableByteArrayInputStream;
+import org.factcenter.qilin.comm.SendableByteArrayOutputStream;
 import org.factcenter.qilin.primitives.Group;
 import org.factcenter.qilin.primitives.GroupTest;
 import org.factcenter.qilin.util.ByteEncoder;
+import org.factcenter.qilin.util.StreamEncoder;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
+import static org.junit.Assert.*;
+
 
 @RunWith(Parameterized.class)
 public class ECGroupTest extends GroupTest<ECPoint> {
@@ -73,6 +81,106 @@ public class ECGroupTest extends GroupTest<ECPoint> {
 		this.grp = grp;
 	}
 
+	/**
+	 * Points to encode: random points (in projective coordinates), the point at infinity and
+	 * an already normalized point.
+	 */
+	ECPoint[] getTestPoints(int n) {
+		ECPoint[] points = new ECPoint[n];
+		for (int i = 0; i < n; ++i)
+			points[i] = grp.sample(rand).twice();
+		if (n > 1) {
+			points[1] = grp.zero();
+			points[n - 1] = points[n - 1].normalize();
+		}
+		return points;
+	}
+
+	@Test
+	public void testEncodeAll() {
+		for (int n : new int[] { 0, 1, 2, CONFIDENCE }) {
+			ECPoint[] points = getTestPoints(n);
+			byte[] encoded = grp.encodeAll(points);
+			assertEquals(n * grp.getEncodedLength(), encoded.length);
+
+			ECPoint[] decoded = grp.decodeAll(encoded);
+			assertEquals(n, decoded.length);
+			for (int i = 0; i < n; ++i) {
+				assertEquals(points[i], decoded[i]);
+				if (!points[i].isInfinity())
+					assertArrayEquals(points[i].getEncoded(true),
+							Arrays.copyOfRange(encoded, i * grp.getEncodedLength(), (i + 1) * grp.getEncodedLength()));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDecodeAllBadLength() {
+		byte[] encoded = grp.encodeAll(getTestPoints(2));
+		grp.decodeAll(Arrays.copyOf(encoded, encoded.length - 1));
+	}
+
+	@Test
+	public void testArrayEncoder() throws IOException {
+		StreamEncoder<ECPoint[]> encoder = grp.getArrayEncoder();
+		SendableByteArrayOutputStream out = new SendableByteArrayOutputStream();
+		ECPoint[] points = getTestPoints(CONFIDENCE);
+		encoder.encode(points, out);
+		encoder.encode(new ECPoint[0], out);
+		assertEquals(8 + CONFIDENCE * grp.getEncodedLength(), out.size());
+
+		SendableByteArrayInputStream in = new SendableByteArrayInputStream(out.toByteArray());
+		assertArrayEquals(points, encoder.decode(in));
+		assertEquals(0, encoder.decode(in).length);
+		assertEquals(0, in.available());
+	}
+
+	@Test
+	public void testDecodeCache() {
+		ECGroup cached = new ECGroup(grp.getCurveParams());
+		cached.setDecodeCacheSize(2);
+		ECPoint[] points = getTestPoints(3);
+		byte[][] encoded = new byte[points.length][];
+		for (int i = 0; i < points.length; ++i)
+			encoded[i] = cached.encode(points[i]);
+
+		assertEquals(points[0], cached.decode(encoded[0]));
+		assertEquals(points[0], cached.decode(encoded[0].clone()));
+		assertEquals(1, cached.getDecodeCacheHits());
+		assertEquals(1, cached.getDecodeCacheMisses());
+
+		// Evicts encoded[0] (the least recently used)
+		assertEquals(points[2], cached.decode(encoded[2]));
+		assertEquals(points[1], cached.decode(encoded[1]));
+		assertEquals(points[2], cached.decode(encoded[2]));
+		assertEquals(points[0], cached.decode(encoded[0]));
+		assertEquals(2, cached.getDecodeCacheHits());
+		assertEquals(4, cached.getDecodeCacheMisses());
+
+		cached.setDecodeCacheSize(0);
+		assertEquals(points[0], cached.decode(encoded[0]));
+		assertEquals(0, cached.getDecodeCacheHits());
+	}
+
+	/**
+	 * Messages that start with zero bytes must survive injective encoding
+	 * (the decoded block is right-aligned).
+	 */
+	@Test
+	public void testInjectiveEncodeLeadingZeros() {
+		int msgLen = grp.getInjectiveEncodeMsgLength();
+		if (msgLen < 2)
+			return;
+		for (int i = 0; i < CONFIDENCE; ++i) {
+			byte[] msg = new byte[msgLen];
+			rand.nextBytes(msg);
+			msg[0] = 0;
+			if (i % 2 == 0)
+				msg[1] = 0;
+			assertArrayEquals("Leading zeros lost at i=" + i, msg, grp.injectiveDecode(grp.injectiveEncode(msg, rand)));
+		}
+	}
+
 	@Override
 	protected ByteEncoder<ECPoint> getEncoder() {
 		return grp;
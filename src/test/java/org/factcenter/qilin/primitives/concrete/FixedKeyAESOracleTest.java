@@ -0,0 +1,76 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Test {@link FixedKeyAESOracle}
+ */
+public class FixedKeyAESOracleTest {
+    FixedKeyAESOracle H = new FixedKeyAESOracle();
+    Random rand = new Random(0);
+
+    byte[] digest(byte[] input, int index, int outlen) {
+        H.reset();
+        H.update(input, 0, input.length);
+        return H.digest(index, outlen);
+    }
+
+    @Test
+    public void testDeterministicAndStreaming() {
+        for (int len : new int[] {0, 1, 10, 16, 17, 100}) {
+            byte[] input = new byte[len];
+            rand.nextBytes(input);
+
+            byte[] expected = digest(input, 5, 40);
+
+            // Same input split over several updates, shorter output is a prefix
+            H.reset();
+            H.update(input, 0, len / 2);
+            H.update(input, len / 2, len - len / 2);
+            byte[] actual = H.digest(5, 33);
+            assertArrayEquals(Arrays.copyOf(expected, 33), actual);
+
+            // A fresh instance gives the same result
+            FixedKeyAESOracle H2 = new FixedKeyAESOracle();
+            H2.update(input, 0, len);
+            assertArrayEquals(expected, H2.digest(5, 40));
+        }
+    }
+
+    @Test
+    public void testIndexAndLengthSeparation() {
+        byte[] input = new byte[10];
+        rand.nextBytes(input);
+
+        byte[] d0 = digest(input, 0, 16);
+        assertFalse(Arrays.equals(d0, digest(input, 1, 16)));
+
+        // Zero padding must not cause collisions
+        byte[] padded = Arrays.copyOf(input, 11);
+        assertFalse(Arrays.equals(d0, digest(padded, 0, 16)));
+
+        // Output blocks must differ
+        byte[] two = digest(input, 0, 32);
+        assertFalse(Arrays.equals(Arrays.copyOfRange(two, 0, 16), Arrays.copyOfRange(two, 16, 32)));
+    }
+
+    /**
+     * Known answers for the default key: an empty input, a full block (with two and a half output blocks)
+     * and an input long enough to be compressed.
+     */
+    @Test
+    public void testKnownAnswers() throws Exception {
+        assertArrayEquals(Hex.decode("d258df24fa7ba8bf8fdb9179e1dec566"), digest(new byte[0], 0, 16));
+        assertArrayEquals(Hex.decode("844be69d02f83a1af12d3ad45db7f274a7e95fa0c3150a19a9c525beffb7821c1337249f168e944b"),
+                digest(Hex.decode("000102030405060708090a0b0c0d0e0f"), 7, 40));
+        assertArrayEquals(Hex.decode("2b4918b37badfd413a59ded0d2e86c9aa9b453e1"),
+                digest("The quick brown fox jumps over the lazy dog".getBytes("US-ASCII"), 1, 20));
+    }
+}
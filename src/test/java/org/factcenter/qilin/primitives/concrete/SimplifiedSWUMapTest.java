@@ -0,0 +1,79 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECFieldElement;
+import org.bouncycastle.math.ec.ECPoint;
+import org.factcenter.qilin.util.GlobalTestParams;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SimplifiedSWUMapTest implements GlobalTestParams {
+	Random rand = new Random(0);
+
+	ECCurve getCurve(String name) {
+		return ECNamedCurveTable.getParameterSpec(name).getCurve();
+	}
+
+	/**
+	 * Z values from RFC 9380, section 8.
+	 */
+	@Test
+	public void testZ() {
+		String[] curves = { "P-256", "P-384", "P-521" };
+		int[] expected = { -10, -12, -4 };
+		for (int i = 0; i < curves.length; ++i) {
+			ECCurve curve = getCurve(curves[i]);
+			SimplifiedSWUMap map = new SimplifiedSWUMap(curve);
+			assertEquals(curves[i], curve.fromBigInteger(BigInteger.valueOf(expected[i]).mod(
+					curve.getField().getCharacteristic())), map.getZ());
+		}
+	}
+
+	@Test
+	public void testMapToCurve() {
+		for (String name : new String[] { "P-256", "P-384" }) {
+			ECCurve curve = getCurve(name);
+			SimplifiedSWUMap map = new SimplifiedSWUMap(curve);
+			BigInteger p = curve.getField().getCharacteristic();
+			for (int i = 0; i < CONFIDENCE + 1; ++i) {
+				// u = 0 is the exceptional case
+				BigInteger u = i == 0 ? BigInteger.ZERO : new BigInteger(p.bitLength() + 64, rand).mod(p);
+				ECFieldElement uField = curve.fromBigInteger(u);
+				ECPoint point = map.map(uField);
+				assertTrue(point.isValid());
+				assertEquals(uField.testBitZero(), point.getAffineYCoord().testBitZero());
+				assertEquals(point, map.map(curve.fromBigInteger(u)));
+			}
+		}
+	}
+
+	@Test
+	public void testSupports() {
+		assertTrue(SimplifiedSWUMap.supports(getCurve("P-256")));
+		// A = 0
+		assertFalse(SimplifiedSWUMap.supports(getCurve("secp256k1")));
+		// Binary field
+		assertFalse(SimplifiedSWUMap.supports(getCurve("B-163")));
+	}
+
+	@Test
+	public void testDenseDecode() {
+		ECGroup grp = new ECGroup("P-256");
+		assertNotNull(grp.getHashMap());
+		byte[] input = new byte[grp.getMinLength()];
+		for (int i = 0; i < CONFIDENCE; ++i) {
+			rand.nextBytes(input);
+			ECPoint point = grp.denseDecode(input);
+			assertTrue(grp.contains(point));
+			assertFalse(point.isInfinity());
+			assertEquals(point, grp.denseDecode(input.clone()));
+			input[0] ^= 1;
+			assertFalse(point.equals(grp.denseDecode(input)));
+		}
+	}
+}
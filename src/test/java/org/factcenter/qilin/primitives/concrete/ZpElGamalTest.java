@@ -63,4 +63,15 @@ public class ZpElGamalTest extends ElGamalTest<BigInteger> {
 		}
 	}
 
+	@RunWith(Parameterized.class)
+	public static class Batch extends ElGamalTest.Batch<BigInteger> {
+		public Batch(ElGamalTest<BigInteger> globals) {
+			super(globals);
+		}
+
+		@Parameters
+		public static Collection<Object[]> getParameters() {
+			return ZpElGamalTest.getTestParameters();
+		}
+	}
 }
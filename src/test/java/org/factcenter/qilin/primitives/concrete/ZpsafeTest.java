@@ -1,18 +1,25 @@
 package org.factcenter.qilin.primitives.concrete;
 
+import org.factcenter.qilin.comm.SendableByteArrayInputStream;
+import org.factcenter.qilin.comm.SendableByteArrayOutputStream;
 import org.factcenter.qilin.primitives.Group;
 import org.factcenter.qilin.primitives.GroupTest;
 import org.factcenter.qilin.util.ByteEncoder;
+import org.factcenter.qilin.util.ParallelUtils;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
+import static org.junit.Assert.*;
+
 
 @RunWith(Parameterized.class)
 public class ZpsafeTest extends GroupTest<BigInteger> {
@@ -40,6 +47,73 @@ public class ZpsafeTest extends GroupTest<BigInteger> {
 	}
 	
 	
+	/**
+	 * Check that contains (which uses the Legendre symbol) agrees with g^q==1 on random integers mod p.
+	 */
+	@Test
+	public void testContainsMatchesOrder() {
+		for (int i = 0; i < CONFIDENCE * 4; ++i) {
+			BigInteger x = new BigInteger(grp.p.bitLength() + 8, rand).mod(grp.p);
+			boolean member = x.signum() > 0 && x.modPow(grp.q, grp.p).equals(BigInteger.ONE);
+			assertEquals("membership of " + x, member, grp.contains(x));
+		}
+		assertFalse(grp.contains(BigInteger.ZERO));
+		assertFalse(grp.contains(grp.p));
+		assertFalse(grp.contains(grp.p.subtract(BigInteger.ONE)));
+	}
+
+	/**
+	 * A multiplier whose table would exceed the size limit never builds it (and still computes correctly).
+	 */
+	@Test
+	public void testFixedBaseTableLimit() {
+		BigInteger base = grp.sample(rand);
+		ZpFixedBaseMultiplier capped = new ZpFixedBaseMultiplier(grp, base,
+				ZpFixedBaseMultiplier.DEFAULT_WINDOW_BITS, 0, 16);
+		assertFalse(capped.usesTable());
+		ZpFixedBaseMultiplier uncapped = new ZpFixedBaseMultiplier(grp, base,
+				ZpFixedBaseMultiplier.DEFAULT_WINDOW_BITS, 0, Long.MAX_VALUE);
+		assertTrue(uncapped.usesTable());
+		for (int i = 0; i < CONFIDENCE; ++i) {
+			BigInteger k = new BigInteger(grp.q.bitLength() + 8, rand);
+			assertEquals(base.modPow(k, grp.p), capped.multiply(k));
+			assertEquals(base.modPow(k, grp.p), uncapped.multiply(k));
+		}
+		assertNull(capped.table);
+		assertNotNull(uncapped.table);
+	}
+
+	@Test
+	public void testRandomSafePrime() {
+		int bits = grp.q.bitLength();
+		BigInteger p = Zpsafe.randomSafePrime(bits, 50, rand, ParallelUtils.getDefaultPool());
+		BigInteger q = p.shiftRight(1);
+		assertEquals(bits, q.bitLength());
+		assertTrue(q.isProbablePrime(50));
+		assertTrue(p.isProbablePrime(50));
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		SendableByteArrayOutputStream out = new SendableByteArrayOutputStream();
+		out.writeObject(grp);
+		SendableByteArrayInputStream in = new SendableByteArrayInputStream(out.toByteArray());
+		Zpsafe read = in.readObject(Zpsafe.class);
+		assertEquals(grp.p, read.p);
+		assertEquals(grp.q, read.q);
+		assertEquals(grp.getGenerator(), read.getGenerator());
+		BigInteger x = read.sample(rand);
+		assertTrue(grp.contains(x));
+		assertEquals(grp.multiply(x, BigInteger.TEN), read.multiply(x, BigInteger.TEN));
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadInvalid() throws IOException {
+		SendableByteArrayOutputStream out = new SendableByteArrayOutputStream();
+		out.writeObject(grp.p.add(BigInteger.valueOf(2)));
+		new SendableByteArrayInputStream(out.toByteArray()).readObject(Zpsafe.class);
+	}
+
 	@Override
 	protected ByteEncoder<BigInteger> getEncoder() {
 		return grp;
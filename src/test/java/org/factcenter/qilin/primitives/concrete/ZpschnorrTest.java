@@ -0,0 +1,187 @@
+package org.factcenter.qilin.primitives.concrete;
+
+import org.factcenter.qilin.comm.SendableByteArrayInputStream;
+import org.factcenter.qilin.comm.SendableByteArrayOutputStream;
+import org.factcenter.qilin.primitives.Group;
+import org.factcenter.qilin.primitives.GroupTest;
+import org.factcenter.qilin.util.ByteEncoder;
+import org.factcenter.qilin.util.IntegerUtils;
+import org.factcenter.qilin.util.ParallelUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+@RunWith(Parameterized.class)
+public class ZpschnorrTest extends GroupTest<BigInteger> {
+	public final static int[][] BITS = {{64, 32}, {256, 128}, {1024, 160}};
+
+	Zpschnorr grp;
+	Random rand;
+
+	public ZpschnorrTest(Random rand, Zpschnorr grp) {
+		this.rand = rand;
+		this.grp = grp;
+	}
+
+
+	@Parameters
+	public static Collection<Object[]>  getTestParameters() {
+		Random rand = new Random(1);
+		List<Object[]> params = new ArrayList<Object[]>(BITS.length);
+		for (int[] bits : BITS) {
+			Zpschnorr grp = Zpschnorr.generate(bits[0], bits[1], 50, rand);
+			Object[] param = {rand, grp};
+			params.add(param);
+		}
+		return params;
+	}
+
+	/**
+	 * Check the generated parameters: p and q are prime, q | p-1 and the generator has order q.
+	 */
+	@Test
+	public void testParameters() {
+		assertTrue(grp.p.isProbablePrime(50));
+		assertTrue(grp.q.isProbablePrime(50));
+		assertEquals(BigInteger.ONE, grp.p.mod(grp.q));
+		assertEquals(grp.p.subtract(BigInteger.ONE), grp.q.multiply(grp.getCofactor()));
+		assertFalse(grp.getGenerator().equals(BigInteger.ONE));
+		assertEquals(BigInteger.ONE, grp.getGenerator().modPow(grp.q, grp.p));
+	}
+
+	/**
+	 * Check that contains rejects elements of Z_p* outside the subgroup.
+	 */
+	@Test
+	public void testContainsRejectsNonMembers() {
+		assertFalse(grp.contains(BigInteger.ZERO));
+		assertFalse(grp.contains(grp.p));
+		for (int i = 0; i < CONFIDENCE; ++i) {
+			BigInteger x = new BigInteger(grp.p.bitLength() + 8, rand).mod(grp.p);
+			boolean member = x.signum() > 0 && x.modPow(grp.q, grp.p).equals(BigInteger.ONE);
+			assertEquals("membership of " + x, member, grp.contains(x));
+			assertTrue(grp.contains(grp.denseDecode(x.toByteArray())));
+			assertTrue(grp.contains(grp.randomWithSecretDLOG(rand)));
+		}
+	}
+
+	/**
+	 * Check that batch membership checks reject a batch with a single non-member, both for elements with a
+	 * component of order 2 and for random elements of Z_p*.
+	 */
+	@Test
+	public void testContainsAllRejectsNonMembers() {
+		int n = Zpschnorr.BATCH_THRESHOLD * 2;
+		List<BigInteger> elements = new ArrayList<BigInteger>(n);
+		for (int i = 0; i < n; ++i)
+			elements.add(grp.sample(rand));
+		assertTrue(grp.containsAll(elements));
+
+		for (int i = 0; i < CONFIDENCE; ++i) {
+			int pos = rand.nextInt(n);
+			BigInteger orig = elements.get(pos);
+			BigInteger bad;
+			if (i % 2 == 0) {
+				// -x has a component of order 2
+				bad = grp.p.subtract(orig);
+			} else {
+				do {
+					bad = new BigInteger(grp.p.bitLength() + 8, rand).mod(grp.p);
+				} while (bad.signum() == 0 || grp.contains(bad));
+			}
+			elements.set(pos, bad);
+			assertFalse("Batch with non-member " + bad, grp.containsAll(elements));
+			elements.set(pos, orig);
+		}
+	}
+
+	/**
+	 * Check batch rejection of an element whose component outside the subgroup has odd order
+	 * (which the Legendre symbol doesn't detect).
+	 */
+	@Test
+	public void testContainsAllRejectsOddOrderComponent() {
+		int n = Zpschnorr.BATCH_THRESHOLD * 2;
+		List<BigInteger> elements = new ArrayList<BigInteger>(n);
+		for (int i = 0; i < n; ++i)
+			elements.add(grp.sample(rand));
+
+		// t = w^(2q) has order dividing k/2 (and is not 1 for a random w unless k=2)
+		BigInteger t;
+		int tries = 0;
+		do {
+			BigInteger w = new BigInteger(grp.p.bitLength() + 8, rand).mod(grp.p);
+			t = w.modPow(grp.q.shiftLeft(1), grp.p);
+		} while (t.equals(BigInteger.ONE) && ++tries < CONFIDENCE);
+		if (t.equals(BigInteger.ONE))
+			return;
+		int pos = rand.nextInt(n);
+		elements.set(pos, elements.get(pos).multiply(t).mod(grp.p));
+		assertEquals(1, IntegerUtils.jacobi(elements.get(pos), grp.p));
+		assertFalse(grp.containsAll(elements));
+	}
+
+	@Test
+	public void testGenerateParallel() {
+		int pBits = grp.p.bitLength();
+		int qBits = grp.q.bitLength();
+		Zpschnorr generated = Zpschnorr.generate(pBits, qBits, 50, rand, ParallelUtils.getDefaultPool());
+		assertEquals(pBits, generated.p.bitLength());
+		assertEquals(qBits, generated.q.bitLength());
+		assertTrue(generated.p.isProbablePrime(50));
+		assertTrue(generated.q.isProbablePrime(50));
+		assertEquals(BigInteger.ONE, generated.getGenerator().modPow(generated.q, generated.p));
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		SendableByteArrayOutputStream out = new SendableByteArrayOutputStream();
+		out.writeObject(grp);
+		SendableByteArrayInputStream in = new SendableByteArrayInputStream(out.toByteArray());
+		Zpschnorr read = in.readObject(Zpschnorr.class);
+		assertEquals(grp.p, read.p);
+		assertEquals(grp.q, read.q);
+		assertEquals(grp.getCofactor(), read.getCofactor());
+		assertEquals(grp.getGenerator(), read.getGenerator());
+		BigInteger x = read.sample(rand);
+		assertTrue(grp.contains(x));
+		assertEquals(grp.multiply(x, BigInteger.TEN), read.multiply(x, BigInteger.TEN));
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadInvalidGenerator() throws IOException {
+		SendableByteArrayOutputStream out = new SendableByteArrayOutputStream();
+		out.writeObject(grp.p);
+		out.writeObject(grp.q);
+		// -g has order 2q
+		out.writeObject(grp.p.subtract(grp.getGenerator()));
+		new SendableByteArrayInputStream(out.toByteArray()).readObject(Zpschnorr.class);
+	}
+
+	@Override
+	protected ByteEncoder<BigInteger> getEncoder() {
+		return grp;
+	}
+
+	@Override
+	protected Group<BigInteger> getGroup() {
+		return grp;
+	}
+
+	@Override
+	protected Random getRand() {
+		return rand;
+	}
+
+}
@@ -1,14 +1,24 @@
 package org.factcenter.qilin.primitives.generic;
 
+import org.factcenter.qilin.util.BitMatrix;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Test {@link BlockCipherPRG}
  */
 public class BlockCipherPRGTest {
     BlockCipherPRG prg;
 
+    Random rand = new Random(1);
+
 
     @Before
     public void setup() {
@@ -22,4 +32,85 @@ public class BlockCipherPRGTest {
         byte[] out = new byte[100];
         prg.getPRGBytes(out, 0, out.length);
     }
+
+    /**
+     * Expanding rows in bulk must give the same output as setting each key and reading the stream.
+     */
+    void checkExpandRows(BlockCipherPRG prg, int seedCols, int outCols, int numRows) {
+        BitMatrix seeds = new BitMatrix(seedCols, numRows + 3);
+        seeds.fillRandom(rand);
+        BitMatrix out = new BitMatrix(outCols, numRows + 5);
+
+        // The PRG's own stream must not be affected.
+        byte[] key = new byte[16];
+        rand.nextBytes(key);
+        prg.setKey(key);
+        byte[] before = new byte[7];
+        prg.getPRGBytes(before, 0, before.length);
+
+        prg.expandRows(seeds, 3, out, 5, numRows);
+
+        byte[] after = new byte[9];
+        prg.getPRGBytes(after, 0, after.length);
+        byte[] expectedStream = new byte[before.length + after.length];
+        prg.setKey(key);
+        prg.getPRGBytes(expectedStream, 0, expectedStream.length);
+        byte[] stream = new byte[expectedStream.length];
+        System.arraycopy(before, 0, stream, 0, before.length);
+        System.arraycopy(after, 0, stream, before.length, after.length);
+        assertArrayEquals(expectedStream, stream);
+
+        assertTrue(out.isZeroPadded());
+        BitMatrix expected = new BitMatrix(outCols, 1);
+        for (int i = 0; i < numRows; ++i) {
+            prg.setKey(seeds.getSubMatrix(3 + i, 1).getPackedBits(true));
+            prg.getPRGBytes(expected.getBackingArray(), 0, expected.getUsedBytesPerRow());
+            expected.zeroPad();
+            assertEquals("row " + i, expected, out.getSubMatrix(5 + i, 1));
+        }
+    }
+
+    @Test
+    public void testExpandRows() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            BlockCipherPRG[] prgs = { new BlockCipherPRG(), new BlockCipherPRG("Blowfish/ECB/NoPadding", 16) };
+            for (BlockCipherPRG p : prgs) {
+                checkExpandRows(p, 128, 1000, 20);
+                checkExpandRows(p, 80, 131, 7);
+                p.setForkJoinPool(pool);
+                checkExpandRows(p, 128, 777, 500);
+                p.setForkJoinPool(null);
+                checkExpandRows(p, 128, 8, 3);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Long requests (encrypted in bulk) must return the same stream as many short requests.
+     */
+    @Test
+    public void testBulkRequestMatchesStream() throws Exception {
+        BlockCipherPRG[] prgs = { new BlockCipherPRG(), new BlockCipherPRG("Blowfish/ECB/NoPadding", 16) };
+        byte[] key = new byte[16];
+        rand.nextBytes(key);
+        for (BlockCipherPRG p : prgs) {
+            int len = BlockCipherPRG.BULK_BYTES * 3 + 21;
+            byte[] expected = new byte[len];
+            p.setKey(key);
+            for (int i = 0; i < len; i += 3)
+                p.getPRGBytes(expected, i, Math.min(3, len - i));
+
+            byte[] actual = new byte[len + 2];
+            p.setKey(key);
+            p.getPRGBytes(actual, 2, 5);
+            p.getPRGBytes(actual, 7, len - 100);
+            p.getPRGBytes(actual, len - 93, 95);
+            byte[] trimmed = new byte[len];
+            System.arraycopy(actual, 2, trimmed, 0, len);
+            assertArrayEquals(expected, trimmed);
+        }
+    }
 }
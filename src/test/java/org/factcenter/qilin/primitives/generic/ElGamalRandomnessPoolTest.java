@@ -0,0 +1,148 @@
+package org.factcenter.qilin.primitives.generic;
+
+import org.bouncycastle.math.ec.ECPoint;
+import org.factcenter.qilin.primitives.concrete.ECElGamal;
+import org.factcenter.qilin.primitives.concrete.ECGroup;
+import org.factcenter.qilin.primitives.concrete.ZpElGamal;
+import org.factcenter.qilin.primitives.concrete.Zpschnorr;
+import org.factcenter.qilin.util.GlobalTestParams;
+import org.factcenter.qilin.util.PRGRandom;
+import org.factcenter.qilin.util.Pair;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ElGamalRandomnessPoolTest implements GlobalTestParams {
+	Random rand = new Random(0);
+
+	ECGroup ecGroup = new ECGroup("P-256");
+	ECElGamal.SK ecSK = new ECElGamal.SK(ecGroup, ECElGamal.generateSecretKey(ecGroup, rand));
+
+	/**
+	 * Wait (up to 10 seconds) until the pool reaches the given depth.
+	 */
+	void waitForDepth(ElGamalRandomnessPool<?> pool, int depth) throws InterruptedException {
+		for (int i = 0; i < 1000 && pool.getDepth() < depth; ++i)
+			Thread.sleep(10);
+		assertTrue(pool.getDepth() >= depth);
+	}
+
+	<G> void checkEncrypt(ElGamal.SK<G> sk, ElGamalRandomnessPool<G> pool, G plaintext) {
+		ElGamalRandomnessPool.Entry<G> entry = pool.take();
+		Pair<G, G> cipher = pool.encrypt(plaintext, entry);
+		assertEquals(sk.encrypt(plaintext, entry.r), cipher);
+		assertEquals(plaintext, sk.decrypt(cipher));
+	}
+
+	@Test
+	public void testFillAndEncrypt() {
+		ElGamalRandomnessPool<ECPoint> pool = new ElGamalRandomnessPool<ECPoint>(ecSK, rand, 2, 10);
+		pool.fill(CONFIDENCE);
+		assertEquals(CONFIDENCE, pool.getDepth());
+		assertEquals(CONFIDENCE, pool.getProduced());
+		assertTrue(pool.getRefillRate() > 0);
+		for (int i = 0; i < CONFIDENCE; ++i)
+			checkEncrypt(ecSK, pool, ecGroup.sample(rand));
+		assertEquals(0, pool.getDepth());
+		assertEquals(CONFIDENCE, pool.getConsumed());
+		assertEquals(0, pool.getMisses());
+	}
+
+	@Test
+	public void testZpGroup() {
+		Zpschnorr grp = Zpschnorr.generate(512, 160, 50, rand);
+		ZpElGamal.SK sk = new ZpElGamal.SK(grp, ZpElGamal.generateSecretKey(grp, rand));
+		ElGamalRandomnessPool<BigInteger> pool = new ElGamalRandomnessPool<BigInteger>(sk, rand, 0, 5);
+		pool.fill(2);
+		for (int i = 0; i < CONFIDENCE; ++i)
+			checkEncrypt(sk, pool, grp.sample(rand));
+	}
+
+	@Test
+	public void testEmptyPool() {
+		ElGamalRandomnessPool<ECPoint> pool = new ElGamalRandomnessPool<ECPoint>(ecSK, rand, 0, 1);
+		ECPoint plaintext = ecGroup.sample(rand);
+		assertEquals(plaintext, ecSK.decrypt(pool.encrypt(plaintext)));
+		assertEquals(1, pool.getMisses());
+		assertEquals(0, pool.getConsumed());
+	}
+
+	@Test
+	public void testProducer() throws InterruptedException {
+		final AtomicInteger requests = new AtomicInteger();
+		ElGamalRandomnessPool<ECPoint> pool = new ElGamalRandomnessPool<ECPoint>(ecSK, rand, 5, 20);
+		pool.setRefillCallback(new ElGamalRandomnessPool.RefillCallback() {
+			@Override
+			public void makeRequest() {
+				requests.incrementAndGet();
+			}
+		});
+		pool.start();
+		try {
+			waitForDepth(pool, 20);
+			assertEquals(20, pool.getDepth());
+
+			// Drop to the low watermark
+			for (int i = 0; i < 15; ++i)
+				checkEncrypt(ecSK, pool, ecGroup.sample(rand));
+			assertTrue(requests.get() > 0);
+			waitForDepth(pool, 20);
+			assertEquals(35, pool.getProduced());
+		} finally {
+			pool.stop();
+		}
+		assertEquals(0, pool.getMisses());
+	}
+
+	/**
+	 * The producer and callers of take() on an empty pool sample from the same Random concurrently;
+	 * with a generator that isn't thread-safe (PRGRandom), they must still never get the same randomness.
+	 */
+	@Test
+	public void testConcurrentSampling() throws InterruptedException {
+		final ElGamalRandomnessPool<ECPoint> pool = new ElGamalRandomnessPool<ECPoint>(ecSK,
+				new PRGRandom(new byte[] {1, 2, 3, 4}), 0, 500);
+		final List<BigInteger> rs = Collections.synchronizedList(new ArrayList<BigInteger>());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] takers = new Thread[2];
+		pool.start();
+		try {
+			for (int t = 0; t < takers.length; ++t) {
+				takers[t] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for (int i = 0; i < 100; ++i)
+								rs.add(pool.take().r);
+						} catch (Throwable e) {
+							failure.set(e);
+						}
+					}
+				});
+				takers[t].start();
+			}
+			for (Thread taker : takers)
+				taker.join();
+		} finally {
+			pool.stop();
+		}
+		assertNull(failure.get());
+		while (pool.getDepth() > 0)
+			rs.add(pool.take().r);
+		assertEquals(rs.size(), new HashSet<BigInteger>(rs).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWatermarks() {
+		new ElGamalRandomnessPool<ECPoint>(ecSK, rand, 5, 5);
+	}
+}
@@ -3,13 +3,20 @@ package org.factcenter.qilin.primitives.generic;
 import org.factcenter.qilin.primitives.Cipher.PK;
 import org.factcenter.qilin.primitives.Cipher.SK;
 import org.factcenter.qilin.primitives.CipherSKTest;
+import org.factcenter.qilin.primitives.CyclicGroup;
 import org.factcenter.qilin.primitives.Group;
 import org.factcenter.qilin.primitives.HomomorphicTest;
 import org.factcenter.qilin.util.Pair;
 import org.junit.Ignore;
+import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
 
 
 /**
@@ -103,4 +110,153 @@ public class ElGamalTest<G> {
 			return globals.rand;
 		}
 	}
+
+	@Ignore
+	public static class Batch<G> {
+		ElGamalTest<G> globals;
+
+		/**
+		 * Enough elements to be split between several parallel tasks.
+		 */
+		final static int BATCH_SIZE = 3 * ElGamal.PK.BATCH_GRAIN + 5;
+
+		public Batch(ElGamalTest<G> globals) {
+			this.globals = globals;
+		}
+
+		List<G> getPlaintexts(int count) {
+			List<G> plaintexts = new ArrayList<G>(count);
+			for (int i = 0; i < count; ++i)
+				plaintexts.add(globals.grp.sample(globals.rand));
+			return plaintexts;
+		}
+
+		@Test
+		public void testEncryptAll() {
+			List<G> plaintexts = getPlaintexts(BATCH_SIZE);
+			BigInteger[] randomness = globals.pk.getRandomAll(BATCH_SIZE, globals.rand);
+			List<Pair<G, G>> ciphers = globals.pk.encryptAll(plaintexts, randomness);
+			assertEquals(BATCH_SIZE, ciphers.size());
+			for (int i = 0; i < BATCH_SIZE; ++i) {
+				assertEquals(globals.pk.encrypt(plaintexts.get(i), randomness[i]), ciphers.get(i));
+				assertEquals(plaintexts.get(i), globals.sk.decrypt(ciphers.get(i)));
+			}
+		}
+
+		@Test
+		public void testEncryptAllDeterministic() {
+			List<G> plaintexts = getPlaintexts(BATCH_SIZE);
+			long seed = globals.rand.nextLong();
+			List<Pair<G, G>> parallel = globals.pk.encryptAll(plaintexts, new Random(seed));
+
+			ElGamal.PK<G> sequential = new ElGamal.PK<G>(globals.pk.grp, globals.pk.getPK());
+			sequential.setForkJoinPool(null);
+			assertEquals(parallel, sequential.encryptAll(plaintexts, new Random(seed)));
+
+			ElGamal.PK<G> pooled = new ElGamal.PK<G>(globals.pk.grp, globals.pk.getPK());
+			ForkJoinPool pool = new ForkJoinPool(3);
+			try {
+				pooled.setForkJoinPool(pool);
+				assertEquals(parallel, pooled.encryptAll(plaintexts, new Random(seed)));
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		@Test
+		public void testSumParallelConfiguredPool() {
+			List<Pair<G, G>> ciphers = globals.pk.encryptAll(getPlaintexts(BATCH_SIZE), globals.rand);
+			Pair<G, G> expected = globals.pk.sum(ciphers);
+
+			ElGamal.PK<G> sequential = new ElGamal.PK<G>(globals.pk.grp, globals.pk.getPK());
+			sequential.setForkJoinPool(null);
+			assertEquals(expected, sequential.sumParallel(ciphers, null));
+
+			ElGamal.PK<G> pooled = new ElGamal.PK<G>(globals.pk.grp, globals.pk.getPK());
+			ForkJoinPool pool = new ForkJoinPool(3);
+			try {
+				pooled.setForkJoinPool(pool);
+				assertEquals(expected, pooled.sumParallel(ciphers, null));
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		@Test
+		public void testGetRandomAll() {
+			BigInteger order = globals.grp.orderUpperBound();
+			BigInteger[] randomness = globals.pk.getRandomAll(BATCH_SIZE, globals.rand);
+			assertEquals(BATCH_SIZE, randomness.length);
+			for (BigInteger r : randomness) {
+				assertTrue(r.signum() >= 0);
+				assertTrue(r.compareTo(order) < 0);
+			}
+			assertEquals(0, globals.pk.getRandomAll(0, globals.rand).length);
+		}
+
+		@Test
+		public void testDecryptAll() {
+			List<G> plaintexts = getPlaintexts(BATCH_SIZE);
+			List<Pair<G, G>> ciphers = new ArrayList<Pair<G, G>>(globals.pk.encryptAll(plaintexts, globals.rand));
+			// Ciphertexts that weren't produced (and normalized) by a batch operation
+			ciphers.set(1, globals.pk.encrypt(plaintexts.get(1), globals.pk.getRandom(globals.rand)));
+			assertEquals(plaintexts, globals.sk.decryptAll(ciphers));
+
+			assertEquals(plaintexts.subList(0, 1), globals.sk.decryptAll(ciphers.subList(0, 1)));
+			assertTrue(globals.sk.decryptAll(new ArrayList<Pair<G, G>>()).isEmpty());
+		}
+
+		@Test
+		public void testRerandomizeAll() {
+			G zero = globals.grp.zero();
+			List<G> plaintexts = getPlaintexts(BATCH_SIZE);
+			List<Pair<G, G>> ciphers = globals.pk.encryptAll(plaintexts, globals.rand);
+			BigInteger[] randomness = globals.pk.getRandomAll(BATCH_SIZE, globals.rand);
+			List<Pair<G, G>> rerandomized = globals.pk.rerandomizeAll(ciphers, randomness);
+			assertEquals(BATCH_SIZE, rerandomized.size());
+			for (int i = 0; i < BATCH_SIZE; ++i) {
+				assertEquals(globals.pk.add(ciphers.get(i), globals.pk.encrypt(zero, randomness[i])), rerandomized.get(i));
+				// (The test groups include tiny ones, in which r = 0 is likely.)
+				if (randomness[i].signum() != 0)
+					assertFalse(ciphers.get(i).equals(rerandomized.get(i)));
+			}
+			assertEquals(plaintexts, globals.sk.decryptAll(rerandomized));
+			assertEquals(plaintexts, globals.sk.decryptAll(globals.pk.rerandomizeAll(ciphers, globals.rand)));
+		}
+
+		@Test
+		public void testRerandomizeAllPrecomputed() {
+			List<G> plaintexts = getPlaintexts(BATCH_SIZE);
+			List<Pair<G, G>> ciphers = globals.pk.encryptAll(plaintexts, globals.rand);
+			List<G> zeros = new ArrayList<G>(BATCH_SIZE);
+			for (int i = 0; i < BATCH_SIZE; ++i)
+				zeros.add(globals.grp.zero());
+			List<Pair<G, G>> zeroEncryptions = globals.pk.encryptAll(zeros, globals.rand);
+			assertEquals(plaintexts, globals.sk.decryptAll(globals.pk.rerandomizeAll(ciphers, zeroEncryptions)));
+
+			ElGamalRandomnessPool<G> pool = new ElGamalRandomnessPool<G>(globals.pk, globals.rand, 0, 1);
+			pool.fill(BATCH_SIZE / 2);
+			assertEquals(plaintexts, globals.sk.decryptAll(globals.pk.rerandomizeAll(ciphers, pool)));
+			assertEquals(0, pool.getDepth());
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void testRerandomizeAllLengthMismatch() {
+			List<Pair<G, G>> ciphers = globals.pk.encryptAll(getPlaintexts(2), globals.rand);
+			globals.pk.rerandomizeAll(ciphers, globals.pk.getRandomAll(1, globals.rand));
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void testRerandomizeAllWrongPool() {
+			CyclicGroup<G> grp = globals.pk.grp;
+			ElGamal.PK<G> otherKey = new ElGamal.PK<G>(grp, grp.add(globals.pk.pk, grp.getGenerator()));
+			ElGamalRandomnessPool<G> pool = new ElGamalRandomnessPool<G>(otherKey, globals.rand, 0, 1);
+			globals.pk.rerandomizeAll(globals.pk.encryptAll(getPlaintexts(2), globals.rand), pool);
+		}
+
+		@Test(expected = IllegalArgumentException.class)
+		public void testEncryptAllLengthMismatch() {
+			globals.pk.encryptAll(getPlaintexts(2), globals.pk.getRandomAll(3, globals.rand));
+		}
+	}
 }
@@ -5,9 +5,11 @@ import org.factcenter.qilin.comm.LocalChannelFactory;
 import org.factcenter.qilin.primitives.PseudorandomGenerator;
 import org.factcenter.qilin.primitives.StreamingRandomOracle;
 import org.factcenter.qilin.primitives.concrete.DigestOracle;
+import org.factcenter.qilin.primitives.concrete.FixedKeyAESOracle;
 import org.factcenter.qilin.primitives.generic.BlockCipherPRG;
 import org.factcenter.qilin.protocols.OT1of2;
 import org.factcenter.qilin.util.BitMatrix;
+import org.factcenter.qilin.util.EncodingUtils;
 import org.factcenter.qilin.util.Pair;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,6 +17,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
@@ -163,6 +166,38 @@ public class OTExtensionServerTest {
 	}
 
 
+	/**
+	 * Same as {@link #testExtension()}, hashing with {@link FixedKeyAESOracle}.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testExtensionFixedKeyAES() throws IOException, InterruptedException {
+		otExtender0.H = new FixedKeyAESOracle();
+		otExtender1.H = new FixedKeyAESOracle();
+		otExtender0.setRowIndexAsOracleIndex(true);
+		otExtender1.setRowIndexAsOracleIndex(true);
+		testExtension();
+	}
+
+	/**
+	 * By default, the row index is hashed as a 4-byte prefix of the row (with oracle index 0).
+	 */
+	@Test
+	public void testDefaultRowHashFormat() {
+		byte[] row = new byte[k / 8];
+		rand.nextBytes(row);
+		byte[] out = new byte[row.length];
+		otExtender0.hashRow(5, row, 0, row.length, out, out.length);
+
+		byte[] index = new byte[4];
+		EncodingUtils.encode(5, index, 0);
+		DigestOracle H = new DigestOracle();
+		H.update(index, 0, index.length);
+		H.update(row, 0, row.length);
+		assertArrayEquals(H.digest(0, out.length), out);
+	}
+
 	/**
 	 * Test an extension from a k*k block.
 	 * @throws IOException
@@ -350,6 +385,18 @@ public class OTExtensionServerTest {
 		}
 	}
 	
+	/**
+	 * Same as {@link #testSendAndReceiveLarge()}, with the client's precomputed blocks stored off-heap.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testSendAndReceiveLargeOffHeap() throws IOException, InterruptedException {
+		otExtender0.setOffHeapBlocks(true);
+		otExtender1.setOffHeapBlocks(true);
+		testSendAndReceiveLarge();
+	}
+
 	/**
 	 * Test a complete cycle of send and receive, including initialization (using less than one block of precomputed OT).
 	 * @throws IOException
@@ -170,11 +170,25 @@ public class PrecomputedOTClientTest {
 
     @Test
     public void testSendAndReceiveTwoBlocks() throws IOException {
+        sendAndReceiveTwoBlocks(false);
+    }
+
+    @Test
+    public void testSendAndReceiveOffHeapBlocks() throws IOException {
+        sendAndReceiveTwoBlocks(true);
+    }
+
+    void sendAndReceiveTwoBlocks(boolean offHeap) throws IOException {
         for (int i = 0; i < 2; ++i) {
             Pair<PrecomputedChoiceOTBlock, PrecomputedSendingOTBlock> block = generateDummyBlock(k, k, rand);
 
-            otClient0.getChoiceOTBlockQueue().addOTs(block.a);
-            otClient1.getSendingOTBlockQueue().addOTs(block.b);
+            if (offHeap) {
+                otClient0.getChoiceOTBlockQueue().addOTs(block.a.toOffHeap());
+                otClient1.getSendingOTBlockQueue().addOTs(block.b.toOffHeap());
+            } else {
+                otClient0.getChoiceOTBlockQueue().addOTs(block.a);
+                otClient1.getSendingOTBlockQueue().addOTs(block.b);
+            }
         }
 
         int num = (int) (k * 1.5);
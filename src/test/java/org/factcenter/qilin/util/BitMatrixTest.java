@@ -1,10 +1,16 @@
 package org.factcenter.qilin.util;
 
+import org.factcenter.qilin.comm.SendableInputStream;
+import org.factcenter.qilin.comm.SendableOutputStream;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 
@@ -28,7 +34,48 @@ public class BitMatrixTest {
 			}
 		}
 	}
-	
+
+	/**
+	 * Compare the word-based transpose against a bit-by-bit one on sizes that don't
+	 * fill whole tiles and on matrices with row offsets and dirty padding.
+	 */
+	@Test
+	public void testTransposeEdges() {
+		int[][] sizes = { {1, 1}, {7, 3}, {64, 64}, {65, 63}, {130, 17}, {9, 200}, {1, 129} };
+
+		for (int[] size : sizes) {
+			BitMatrix A = new BitMatrix(size[0], size[1]);
+			A.fillRandom(rand);
+			assertTransposed(A, A.transpose());
+		}
+
+		BitMatrix A = new BitMatrix(203, 150);
+		A.fillRandom(rand);
+		assertTransposed(A.getSubMatrix(13, 99), A.getSubMatrix(13, 99).transpose());
+
+		// Byte-aligned column submatrix: shares the backing array, padding isn't zeroed.
+		BitMatrix sub = A.getSubMatrixCols(16, 77);
+		assertFalse(sub.isZeroPadded());
+		assertTransposed(sub, sub.transpose());
+	}
+
+	private void assertTransposed(BitMatrix A, BitMatrix B) {
+		assertEquals(A.getNumRows(), B.getNumCols());
+		assertEquals(A.getNumCols(), B.getNumRows());
+		assertTrue(B.isZeroPadded());
+		for (int col = 0; col < A.getNumCols(); ++col) {
+			for (int row = 0; row < A.getNumRows(); ++row) {
+				assertEquals(A.getBit(col, row), B.getBit(row, col));
+			}
+		}
+		// Padding bits of the transpose must be zero
+		for (int row = 0; row < B.getNumRows(); ++row) {
+			for (int col = B.getNumCols(); col < B.getRowLen() * 8; ++col) {
+				assertEquals(0, B.getBit(col, row));
+			}
+		}
+	}
+
 
 	@Test
 	public void testSubcolumnsByteAligned() {
@@ -336,4 +383,162 @@ public class BitMatrixTest {
 
         assertNotEquals(bm1.getBit(30), bm2.getBit(30));
     }
+
+    @Test
+    public void testCopyRowUnaligned() {
+        BitMatrix src = new BitMatrix(300, 3);
+        src.fillRandom(rand);
+
+        for (int i = 0; i < 50; ++i) {
+            BitMatrix dst = new BitMatrix(250, 2);
+            dst.fillRandom(rand);
+            BitMatrix orig = dst.clone();
+
+            int srcStart = rand.nextInt(300);
+            int dstStart = rand.nextInt(250);
+            int len = rand.nextInt(300 - srcStart) + 1;
+            dst.copyRow(1, dstStart, src, 2, srcStart, len);
+
+            int copied = Math.min(len, 250 - dstStart);
+            for (int col = 0; col < 250; ++col) {
+                int expected = (col >= dstStart && col < dstStart + copied) ?
+                        src.getBit(srcStart + col - dstStart, 2) : orig.getBit(col, 1);
+                assertEquals("col " + col, expected, dst.getBit(col, 1));
+                assertEquals(orig.getBit(col, 0), dst.getBit(col, 0));
+            }
+        }
+    }
+
+    @Test
+    public void testXorAndBitCount() {
+        BitMatrix A = new BitMatrix(203, 40);
+        A.fillRandom(rand);
+        BitMatrix B = new BitMatrix(203, 40);
+        B.fillRandom(rand);
+
+        BitMatrix C = A.clone();
+        C.xor(B);
+        BitMatrix D = A.clone();
+        for (int row = 0; row < 40; ++row)
+            D.xorRow(row, B, row);
+
+        int count = 0;
+        for (int row = 0; row < 40; ++row) {
+            int rowCount = 0;
+            for (int col = 0; col < 203; ++col) {
+                int bit = A.getBit(col, row) ^ B.getBit(col, row);
+                assertEquals(bit, C.getBit(col, row));
+                assertEquals(bit, D.getBit(col, row));
+                rowCount += bit;
+            }
+            assertEquals(rowCount, C.bitCount(row));
+            count += rowCount;
+        }
+        assertEquals(count, C.bitCount());
+        assertEquals(C, D);
+    }
+
+    @Test
+    public void testEqualsIgnoresPadding() {
+        BitMatrix A = new BitMatrix(203, 40);
+        A.fillRandom(rand);
+
+        // Same bits, different layout and dirty padding bits.
+        BitMatrix sub = A.getSubMatrixCols(8, 130);
+        BitMatrix packed = A.getSubMatrixCols(8, 130).clone();
+        assertFalse(sub.isZeroPadded());
+        assertEquals(packed, sub);
+        assertEquals(sub, packed);
+        assertEquals(packed.bitCount(), sub.bitCount());
+
+        packed.xorBit(129, 39, 1);
+        assertNotEquals(packed, sub);
+    }
+
+    @Test
+    public void testParallelOperations() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Wide and tall matrices, both above the parallel threshold.
+            int[][] sizes = { {BitMatrix.PARALLEL_THRESHOLD * 3 + 5, 7}, {129, 9000} };
+            for (int[] size : sizes) {
+                BitMatrix A = new BitMatrix(size[0], size[1]);
+                A.fillRandomParallel(rand, pool);
+                assertTrue(A.isZeroPadded());
+                // Every piece should have been filled
+                assertTrue(A.bitCount() > A.getNumCols() * A.getNumRows() / 3);
+
+                assertEquals(A.clone(), A.cloneParallel(pool));
+                assertEquals(A.transpose(), A.transposeParallel(pool));
+
+                BitMatrix B = new BitMatrix(size[0], size[1]);
+                B.fillRandom(rand);
+                BitMatrix C = A.clone();
+                C.xor(B);
+                BitMatrix D = A.clone();
+                D.xorParallel(B, pool);
+                assertEquals(C, D);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Write matrices with padded rows (sub-matrices) and read them back into a single reused matrix.
+     */
+    @Test
+    public void testReadIntoReusedMatrix() throws IOException {
+        BitMatrix big = new BitMatrix(301, 400);
+        big.fillRandom(rand);
+
+        // Views with padded rows, dirty padding and row offsets; the last one is larger than the rest.
+        BitMatrix[] sent = {
+                big.getSubMatrix(5, 200).getSubMatrixCols(8, 70),
+                big.getSubMatrix(1, 300).getSubMatrixCols(0, 13),
+                big.getSubMatrix(0, 10).getSubMatrixCols(16, 16),
+                big,
+        };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SendableOutputStream out = new SendableOutputStream(bytes);
+        for (BitMatrix m : sent)
+            out.writeObject(m);
+        // A matrix with rows too long for the gather buffer
+        BitMatrix wide = new BitMatrix(BitMatrix.WRITE_BUFFER_SIZE * 8 + 3, 3);
+        wide.fillRandom(rand);
+        BitMatrix wideView = wide.getSubMatrixCols(0, BitMatrix.WRITE_BUFFER_SIZE * 8);
+        out.writeObject(wideView);
+        out.flush();
+
+        SendableInputStream in = new SendableInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        BitMatrix buf = new BitMatrix();
+        byte[] prevArray = null;
+        for (int i = 0; i < sent.length; ++i) {
+            BitMatrix received = in.readObject(buf);
+            assertSame(buf, received);
+            assertEquals(sent[i], received);
+            assertTrue(received.isZeroPadded());
+            if (i == 1 || i == 2) {
+                // Both fit in the array allocated for the first matrix
+                assertSame(prevArray, received.getBackingArray());
+            }
+            if (i == 0)
+                prevArray = received.getBackingArray();
+        }
+        assertEquals(wideView, in.readObject(buf));
+
+        // A reused matrix must not overwrite a view that shares its array
+        bytes.reset();
+        out.writeObject(sent[0]);
+        out.writeObject(sent[2]);
+        out.flush();
+        in = new SendableInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.readObject(buf);
+        BitMatrix view = buf.getSubMatrix(0, 10);
+        BitMatrix viewCopy = view.clone();
+        in.readObject(buf);
+        assertEquals(sent[2], buf);
+        assertEquals(viewCopy, view);
+    }
 }
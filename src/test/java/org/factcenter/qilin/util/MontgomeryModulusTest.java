@@ -0,0 +1,106 @@
+package org.factcenter.qilin.util;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MontgomeryModulusTest implements GlobalTestParams {
+	Random rand = new Random(0);
+
+	/**
+	 * Odd moduli of various sizes, including single-limb moduli and moduli whose top limb is full or almost empty.
+	 */
+	List<BigInteger> getModuli() {
+		List<BigInteger> moduli = new ArrayList<BigInteger>();
+		moduli.add(BigInteger.valueOf(3));
+		moduli.add(BigInteger.valueOf(0xfffffffbL));
+		moduli.add(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.valueOf(59)));
+		moduli.add(BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE));
+		for (int bits : new int[] { 31, 33, 127, 256, 1024, 2049 })
+			moduli.add(BigInteger.probablePrime(bits, rand));
+		return moduli;
+	}
+
+	BigInteger randomElement(BigInteger p) {
+		return new BigInteger(p.bitLength() + 16, rand).mod(p);
+	}
+
+	@Test
+	public void testConversion() {
+		for (BigInteger p : getModuli()) {
+			MontgomeryModulus mont = new MontgomeryModulus(p);
+			assertEquals(BigInteger.ONE, mont.fromMontgomery(mont.one()));
+			assertEquals(BigInteger.ZERO, mont.fromMontgomery(mont.toMontgomery(BigInteger.ZERO)));
+			assertEquals(p.subtract(BigInteger.ONE), mont.fromMontgomery(mont.toMontgomery(p.subtract(BigInteger.ONE))));
+			for (int i = 0; i < CONFIDENCE; ++i) {
+				BigInteger x = randomElement(p);
+				assertEquals(x, mont.fromMontgomery(mont.toMontgomery(x)));
+			}
+		}
+	}
+
+	@Test
+	public void testMultiply() {
+		for (BigInteger p : getModuli()) {
+			MontgomeryModulus mont = new MontgomeryModulus(p);
+			int[] scratch = mont.newScratch();
+			BigInteger[] special = { BigInteger.ZERO, BigInteger.ONE, p.subtract(BigInteger.ONE) };
+			for (int i = 0; i < CONFIDENCE + special.length * special.length; ++i) {
+				BigInteger x, y;
+				if (i < special.length * special.length) {
+					x = special[i / special.length];
+					y = special[i % special.length];
+				} else {
+					x = randomElement(p);
+					y = randomElement(p);
+				}
+				int[] xm = mont.toMontgomery(x);
+				int[] ym = mont.toMontgomery(y);
+				int[] out = new int[mont.getNumLimbs()];
+				mont.multiply(xm, ym, out, scratch);
+				assertEquals(p + ": " + x + "*" + y, x.multiply(y).mod(p), mont.fromMontgomery(out));
+
+				// In place
+				mont.multiply(xm, ym, xm, scratch);
+				assertEquals(x.multiply(y).mod(p), mont.fromMontgomery(xm));
+			}
+		}
+	}
+
+	@Test
+	public void testProduct() {
+		for (BigInteger p : getModuli()) {
+			MontgomeryModulus mont = new MontgomeryModulus(p);
+			for (int n : new int[] { 0, 1, 2, 50 }) {
+				List<BigInteger> elements = new ArrayList<BigInteger>(n);
+				BigInteger expected = BigInteger.ONE.mod(p);
+				for (int i = 0; i < n; ++i) {
+					// Include unreduced and negative elements
+					BigInteger x = new BigInteger(p.bitLength() + 8, rand);
+					if (i % 3 == 1)
+						x = x.negate();
+					elements.add(x);
+					expected = expected.multiply(x).mod(p);
+				}
+				assertEquals(p + ": product of " + n, expected, mont.product(elements));
+			}
+
+			// Mixing Montgomery-form and plain multiplicands
+			BigInteger x = randomElement(p);
+			BigInteger y = randomElement(p);
+			MontgomeryModulus.Accumulator acc = mont.newAccumulator();
+			acc.multiply(x).multiplyMontgomery(mont.toMontgomery(y)).multiply(y);
+			assertEquals(x.multiply(y).multiply(y).mod(p), acc.get());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEvenModulus() {
+		new MontgomeryModulus(BigInteger.valueOf(1024));
+	}
+}
@@ -0,0 +1,61 @@
+package org.factcenter.qilin.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class OffHeapBitMatrixTest {
+
+	Random rand = new Random(0);
+
+	@Test
+	public void testRoundTrip() {
+		BitMatrix A = new BitMatrix(203, 150);
+		A.fillRandom(rand);
+
+		OffHeapBitMatrix off = new OffHeapBitMatrix(A);
+		assertEquals(A.getNumRows(), off.getNumRows());
+		assertEquals(A.getNumCols(), off.getNumCols());
+		assertEquals(A, off.toBitMatrix());
+
+		for (int row = 0; row < A.getNumRows(); ++row)
+			for (int col = 0; col < A.getNumCols(); ++col)
+				assertEquals(A.getBit(col, row), off.getBit(col, row));
+	}
+
+	@Test
+	public void testRemoveRowsAcrossChunks() {
+		BitMatrix A = new BitMatrix(100, 333);
+		A.fillRandom(rand);
+
+		// Small chunks (7 rows each) so that removals cross chunk boundaries.
+		OffHeapBitMatrix off = new OffHeapBitMatrix(A, 7 * 13);
+
+		int row = 0;
+		while (off.getNumRows() > 0) {
+			int num = Math.min(off.getNumRows(), rand.nextInt(20) + 1);
+			assertEquals(A.getSubMatrix(row + 1, num - 1), off.getRows(1, num - 1));
+			BitMatrix removed = off.removeRows(num);
+			assertEquals(A.getSubMatrix(row, num), removed);
+			row += num;
+			assertEquals(A.getNumRows() - row, off.getNumRows());
+		}
+		assertNull(off.chunks[off.chunks.length - 2]);
+	}
+
+	@Test
+	public void testUnpaddedSource() {
+		BitMatrix A = new BitMatrix(203, 40);
+		A.fillRandom(rand);
+
+		// Shares A's backing array, padding bits aren't zero.
+		BitMatrix sub = A.getSubMatrixCols(8, 130);
+		OffHeapBitMatrix off = new OffHeapBitMatrix(sub);
+		BitMatrix back = off.toBitMatrix();
+		assertEquals(sub, back);
+		assertEquals(sub.bitCount(), back.bitCount());
+	}
+}
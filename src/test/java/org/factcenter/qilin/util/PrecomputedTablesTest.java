@@ -0,0 +1,203 @@
+package org.factcenter.qilin.util;
+
+import org.bouncycastle.math.ec.ECPoint;
+import org.factcenter.qilin.primitives.CyclicGroup;
+import org.factcenter.qilin.primitives.PrecomputedMultiplier;
+import org.factcenter.qilin.primitives.concrete.ECGroup;
+import org.factcenter.qilin.primitives.concrete.Zpschnorr;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrecomputedTablesTest implements GlobalTestParams {
+	Random rand = new Random(0);
+
+	static Zpschnorr zpGroup = Zpschnorr.generate(512, 160, 50, new Random(1));
+
+	ByteBuffer export(PrecomputedMultiplier<?> multiplier) {
+		ByteBuffer buf = ByteBuffer.allocate(PrecomputedTables.getSize(multiplier));
+		PrecomputedTables.write(multiplier, buf);
+		assertEquals(0, buf.remaining());
+		buf.flip();
+		return buf;
+	}
+
+	<G> void checkMultiply(CyclicGroup<G> grp, PrecomputedMultiplier<G> multiplier) {
+		for (int i = 0; i < CONFIDENCE; ++i) {
+			BigInteger k = new BigInteger(grp.orderUpperBound().bitLength() + 8, rand);
+			assertEquals(grp.multiply(multiplier.getBase(), k), multiplier.multiply(k));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	<G> PrecomputedMultiplier<G> getMultiplier(CyclicGroup<G> grp, G base) {
+		return (PrecomputedMultiplier<G>) grp.getFixedBaseMultiplier(base);
+	}
+
+	@Test
+	public void testZpExportImport() throws IOException {
+		BigInteger base = zpGroup.sample(rand);
+		ByteBuffer buf = export(getMultiplier(zpGroup, base));
+
+		// A fresh multiplier for an equal base in an equal group
+		Zpschnorr other = new Zpschnorr(zpGroup.getModulus(), zpGroup.orderUpperBound(), zpGroup.getGenerator());
+		PrecomputedMultiplier<BigInteger> imported = getMultiplier(other, new BigInteger(base.toByteArray()));
+		PrecomputedTables.read(imported, buf);
+		checkMultiply(other, imported);
+	}
+
+	@Test
+	public void testECExportImport() throws IOException {
+		ECGroup grp = new ECGroup("P-256");
+		ECPoint base = grp.sample(rand);
+		ByteBuffer buf = export(getMultiplier(grp, base));
+
+		ECGroup other = new ECGroup("P-256");
+		PrecomputedMultiplier<ECPoint> imported = getMultiplier(other, other.decode(grp.encode(base)));
+		PrecomputedTables.read(imported, buf);
+		checkMultiply(other, imported);
+
+		// The generator's table
+		buf = export(getMultiplier(grp, grp.getGenerator()));
+		imported = getMultiplier(other, other.getGenerator());
+		PrecomputedTables.read(imported, buf);
+		checkMultiply(other, imported);
+	}
+
+	@Test(expected = IOException.class)
+	public void testWrongBase() throws IOException {
+		ByteBuffer buf = export(getMultiplier(zpGroup, zpGroup.sample(rand)));
+		PrecomputedTables.read(getMultiplier(zpGroup, zpGroup.sample(rand)), buf);
+	}
+
+	@Test(expected = IOException.class)
+	public void testWrongGroup() throws IOException {
+		ECGroup grp = new ECGroup("P-256");
+		ByteBuffer buf = export(getMultiplier(grp, grp.getGenerator()));
+		ECGroup other = new ECGroup("P-384");
+		PrecomputedTables.read(getMultiplier(other, other.getGenerator()), buf);
+	}
+
+	@Test
+	public void testCorrupted() {
+		ByteBuffer buf = export(getMultiplier(zpGroup, zpGroup.sample(rand)));
+		// Header (magic and version), body and digest
+		for (int pos : new int[] { 0, 5, buf.limit() / 2, buf.limit() - 1 }) {
+			ByteBuffer copy = ByteBuffer.allocate(buf.limit());
+			copy.put(buf.duplicate());
+			copy.flip();
+			copy.put(pos, (byte) (copy.get(pos) ^ 1));
+			try {
+				PrecomputedTables.read(getMultiplier(zpGroup, zpGroup.getGenerator()), copy);
+				fail("Corrupted table at " + pos + " was accepted");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Save the table, let the tamperer modify its body (without the header) and recompute the digest,
+	 * and check that loading it fails and leaves the multiplier working.
+	 */
+	<G> void checkTamperedLoad(CyclicGroup<G> grp, G base, Tamperer tamperer) throws IOException {
+		File file = File.createTempFile("qilin-table", ".bin");
+		file.deleteOnExit();
+		try {
+			PrecomputedTables.save(getMultiplier(grp, base), file);
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+				int digestPos = buf.limit() - PrecomputedTables.DIGEST_SIZE;
+				ByteBuffer table = buf.duplicate();
+				table.position(PrecomputedTables.HEADER_SIZE);
+				table.limit(digestPos);
+				tamperer.tamper(table.slice());
+
+				MessageDigest digest = PrecomputedTables.getDigest();
+				digest.update(table);
+				buf.position(digestPos);
+				buf.put(digest.digest());
+				buf.force();
+			} finally {
+				raf.close();
+			}
+
+			PrecomputedMultiplier<G> imported = getMultiplier(grp, base);
+			try {
+				PrecomputedTables.load(imported, file);
+				fail("Tampered table was accepted");
+			} catch (IOException e) {
+				// expected
+			}
+			checkMultiply(grp, imported);
+		} finally {
+			file.delete();
+		}
+	}
+
+	interface Tamperer {
+		void tamper(ByteBuffer table);
+	}
+
+	@Test
+	public void testZpTamperedEntry() throws IOException {
+		final int numLimbs = (zpGroup.getModulus().bitLength() + 31) / 32;
+		checkTamperedLoad(zpGroup, zpGroup.sample(rand), new Tamperer() {
+			@Override
+			public void tamper(ByteBuffer table) {
+				// The least significant limb of the last entry
+				int pos = table.limit() - 4 * numLimbs;
+				table.putInt(pos, table.getInt(pos) ^ 1);
+			}
+		});
+	}
+
+	@Test
+	public void testECTamperedEntry() throws IOException {
+		ECGroup grp = new ECGroup("P-256");
+		ECPoint base = grp.sample(rand);
+		// Uncompressed points
+		final int pointLen = 1 + 2 * ((base.getCurve().getFieldSize() + 7) / 8);
+		checkTamperedLoad(grp, base, new Tamperer() {
+			@Override
+			public void tamper(ByteBuffer table) {
+				// Swap the last two points (both still on the curve)
+				byte[] last = new byte[pointLen];
+				byte[] previous = new byte[pointLen];
+				int pos = table.limit() - 2 * pointLen;
+				table.position(pos);
+				table.get(previous);
+				table.get(last);
+				table.position(pos);
+				table.put(last);
+				table.put(previous);
+			}
+		});
+	}
+
+	@Test
+	public void testSaveLoad() throws IOException {
+		File file = File.createTempFile("qilin-table", ".bin");
+		file.deleteOnExit();
+		try {
+			BigInteger base = zpGroup.sample(rand);
+			PrecomputedTables.save(getMultiplier(zpGroup, base), file);
+			PrecomputedMultiplier<BigInteger> imported = getMultiplier(zpGroup, base);
+			PrecomputedTables.load(imported, file);
+			checkMultiply(zpGroup, imported);
+		} finally {
+			file.delete();
+		}
+	}
+}